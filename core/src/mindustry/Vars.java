@@ -251,6 +251,8 @@ public class Vars implements Loadable{
     public static BlockIndexer indexer;
     public static Pathfinder pathfinder;
     public static ControlPathfinder controlPath;
+    public static ParallelUpdater parallelUpdater;
+    public static BuildingSleeper buildingSleeper;
     public static FogControl fogControl;
 
     public static Control control;
@@ -323,6 +325,8 @@ public class Vars implements Loadable{
         indexer = new BlockIndexer();
         pathfinder = new Pathfinder();
         controlPath = new ControlPathfinder();
+        parallelUpdater = new ParallelUpdater();
+        buildingSleeper = new BuildingSleeper();
         fogControl = new FogControl();
         bases = new BaseRegistry();
         logicVars = new GlobalVars();
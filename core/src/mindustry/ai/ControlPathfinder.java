@@ -16,6 +16,8 @@ import mindustry.gen.*;
 import mindustry.graphics.*;
 import mindustry.world.*;
 
+import java.util.concurrent.*;
+
 import static mindustry.Vars.*;
 import static mindustry.ai.Pathfinder.*;
 
@@ -83,6 +85,8 @@ public class ControlPathfinder implements Runnable{
     private static final int updateInterval = 1000 / updateFPS, invalidateCheckInterval = 1000;
 
     static final int clusterSize = 12;
+    //clusters recomputed by each worker task; below this amount, updates run on the pathfinding thread
+    static final int updateGrain = 4;
 
     static final int[] offsets = {
     1, 0, //right: bottom to top
@@ -111,8 +115,12 @@ public class ControlPathfinder implements Runnable{
 
     int cwidth, cheight;
 
-    //temporarily used for resolving connections for intra-edges
-    IntSet usedEdges = new IntSet();
+    //scratch for searches within clusters on the pathfinding thread; workers use their own
+    ClusterScratch scratch = new ClusterScratch();
+    ThreadLocal<ClusterScratch> workerScratch = ThreadLocal.withInitial(ClusterScratch::new);
+    //queued cluster updates of the current pass; reused between passes
+    Seq<ClusterUpdate> updates = new Seq<>(ClusterUpdate.class);
+    int updateCount;
     //tasks to run on pathfinding thread
     TaskQueue queue = new TaskQueue();
 
@@ -129,9 +137,14 @@ public class ControlPathfinder implements Runnable{
     //MAIN THREAD ONLY
     Seq<FieldCache> fieldList = new Seq<>(false);
 
-    //these are for inner edge A* (temporary!)
-    IntFloatMap innerCosts = new IntFloatMap();
-    PathfindQueue innerFrontier = new PathfindQueue();
+    //cluster A* state, shared by all requests since searches only run on the pathfinding thread
+    //node index -> total cost
+    IntFloatMap nodeCosts = new IntFloatMap();
+    //node index (NodeIndex struct) -> node it came from
+    IntIntMap nodeCameFrom = new IntIntMap();
+    PathfindQueue nodeFrontier = new PathfindQueue();
+    //resulting path of nodes of the last search
+    IntSeq nodePath = new IntSeq();
 
     //ONLY modify on pathfinding thread.
     IntSet clustersToUpdate = new IntSet();
@@ -146,16 +159,8 @@ public class ControlPathfinder implements Runnable{
     //path requests are per-unit
     static class PathRequest{
         final Unit unit;
+        //destination and costId are the key of the shared field this request follows
         final int destination, team, costId;
-        //resulting path of nodes
-        final IntSeq resultPath = new IntSeq();
-
-        //node index -> total cost
-        @Nullable IntFloatMap costs = new IntFloatMap();
-        //node index (NodeIndex struct) -> node it came from TODO merge them, make properties of FieldCache?
-        @Nullable IntIntMap cameFrom = new IntIntMap();
-        //frontier for A*
-        @Nullable PathfindQueue frontier = new PathfindQueue();
 
         //main thread only!
         long lastUpdateId = state.updateId;
@@ -188,6 +193,9 @@ public class ControlPathfinder implements Runnable{
         final IntQueue frontier = new IntQueue();
         //maps cluster index to field weights; 0 means uninitialized
         final IntMap<int[]> fields = new IntMap<>();
+        //cluster graph nodes with a known path to the goal, with all their clusters in the field - PATHFINDING THREAD ONLY
+        //requests starting at one of these skip the cluster search, and other searches end once they reach one
+        final IntSet pathNodes = new IntSet();
         final long mapKey;
 
         //main thread only!
@@ -210,6 +218,25 @@ public class ControlPathfinder implements Runnable{
         LongSeq[][] portalConnections = new LongSeq[4][];
     }
 
+    //temporary buffers for A* within a cluster
+    static class ClusterScratch{
+        //used for resolving connections for intra-edges
+        final IntSet usedEdges = new IntSet();
+        final IntFloatMap costs = new IntFloatMap();
+        final PathfindQueue frontier = new PathfindQueue();
+    }
+
+    //a cluster of one team and cost that is recomputed in the current pass
+    static class ClusterUpdate{
+        int team, pathCost, index;
+        //whether portals need to be recomputed as well, not only the inner edges
+        boolean complete;
+        Cluster cluster;
+        //new portals, only valid when complete
+        final IntSeq[] portals = {new IntSeq(4), new IntSeq(4), new IntSeq(4), new IntSeq(4)};
+        LongSeq[][] connections;
+    }
+
     public ControlPathfinder(){
 
         Events.on(ResetEvent.class, event -> stop());
@@ -484,43 +511,7 @@ public class ControlPathfinder implements Runnable{
                 portals.clear();
             }
 
-            int addX = moveDirs[direction * 2], addY = moveDirs[direction * 2 + 1];
-            int
-            baseX = cx * clusterSize + offsets[direction * 2] * (clusterSize - 1),
-            baseY = cy * clusterSize + offsets[direction * 2 + 1] * (clusterSize - 1),
-            nextBaseX = baseX + Geometry.d4[direction].x,
-            nextBaseY = baseY + Geometry.d4[direction].y;
-
-            int lastPortal = -1;
-            boolean prevSolid = true;
-
-            for(int i = 0; i < clusterSize; i++){
-                int x = baseX + addX * i, y = baseY + addY * i;
-
-                //scan for portals
-                if(solid(team, cost, x, y) || solid(team, cost, nextBaseX + addX * i, nextBaseY + addY * i)){
-                    int previous = i - 1;
-                    //hit a wall, create portals between the two points
-                    if(!prevSolid && previous >= lastPortal){
-                        //portals are an inclusive range
-                        portals.add(Point2.pack(previous, lastPortal));
-                    }
-                    prevSolid = true;
-                }else{
-                    //empty area encountered, mark the location of portal start
-                    if(prevSolid){
-                        lastPortal = i;
-                    }
-                    prevSolid = false;
-                }
-            }
-
-            //at the end of the loop, close any un-initialized portals; this is copy pasted code
-            int previous = clusterSize - 1;
-            if(!prevSolid && previous >= lastPortal){
-                //portals are an inclusive range
-                portals.add(Point2.pack(previous, lastPortal));
-            }
+            scanPortals(team, cost, cx, cy, direction, portals);
         }
 
         updateInnerEdges(team, cost, cx, cy, cluster);
@@ -528,20 +519,63 @@ public class ControlPathfinder implements Runnable{
         return cluster;
     }
 
-    void updateInnerEdges(int team, int cost, int cx, int cy, Cluster cluster){
-        updateInnerEdges(team, idToCost(cost), cx, cy, cluster);
+    /** Finds the portals on one side of a cluster. Only reads tiles, so this may run on any thread. */
+    void scanPortals(int team, PathCost cost, int cx, int cy, int direction, IntSeq portals){
+        int addX = moveDirs[direction * 2], addY = moveDirs[direction * 2 + 1];
+        int
+        baseX = cx * clusterSize + offsets[direction * 2] * (clusterSize - 1),
+        baseY = cy * clusterSize + offsets[direction * 2 + 1] * (clusterSize - 1),
+        nextBaseX = baseX + Geometry.d4[direction].x,
+        nextBaseY = baseY + Geometry.d4[direction].y;
+
+        int lastPortal = -1;
+        boolean prevSolid = true;
+
+        for(int i = 0; i < clusterSize; i++){
+            int x = baseX + addX * i, y = baseY + addY * i;
+
+            //scan for portals
+            if(solid(team, cost, x, y) || solid(team, cost, nextBaseX + addX * i, nextBaseY + addY * i)){
+                int previous = i - 1;
+                //hit a wall, create portals between the two points
+                if(!prevSolid && previous >= lastPortal){
+                    //portals are an inclusive range
+                    portals.add(Point2.pack(previous, lastPortal));
+                }
+                prevSolid = true;
+            }else{
+                //empty area encountered, mark the location of portal start
+                if(prevSolid){
+                    lastPortal = i;
+                }
+                prevSolid = false;
+            }
+        }
+
+        //at the end of the loop, close any un-initialized portals; this is copy pasted code
+        int previous = clusterSize - 1;
+        if(!prevSolid && previous >= lastPortal){
+            //portals are an inclusive range
+            portals.add(Point2.pack(previous, lastPortal));
+        }
     }
 
     void updateInnerEdges(int team, PathCost cost, int cx, int cy, Cluster cluster){
+        //all connections are replaced at once, since portals changed, they need to be recomputed.
+        cluster.portalConnections = innerEdges(team, cost, cx, cy, cluster.portals, scratch);
+    }
+
+    /** @return the connections between the portals of a cluster. Does not modify anything but the scratch, so this may run on any thread. */
+    LongSeq[][] innerEdges(int team, PathCost cost, int cx, int cy, IntSeq[] clusterPortals, ClusterScratch scratch){
         int minX = cx * clusterSize, minY = cy * clusterSize, maxX = Math.min(minX + clusterSize - 1, wwidth - 1), maxY = Math.min(minY + clusterSize - 1, wheight - 1);
-        
+
+        var usedEdges = scratch.usedEdges;
         usedEdges.clear();
 
-        //clear all connections, since portals changed, they need to be recomputed.
-        cluster.portalConnections = new LongSeq[4][];
+        LongSeq[][] portalConnections = new LongSeq[4][];
 
         for(int direction = 0; direction < 4; direction++){
-            var portals = cluster.portals[direction];
+            var portals = clusterPortals[direction];
             if(portals == null) continue;
 
             int addX = moveDirs[direction * 2], addY = moveDirs[direction * 2 + 1];
@@ -557,7 +591,7 @@ public class ControlPathfinder implements Runnable{
                 y = (addY * average + cy * clusterSize + offsets[direction * 2 + 1] * (clusterSize - 1));
 
                 for(int otherDir = 0; otherDir < 4; otherDir++){
-                    var otherPortals = cluster.portals[otherDir];
+                    var otherPortals = clusterPortals[otherDir];
                     if(otherPortals == null) continue;
 
                     for(int j = 0; j < otherPortals.size; j++){
@@ -579,7 +613,7 @@ public class ControlPathfinder implements Runnable{
                             }
 
                             float connectionCost = innerAstar(
-                                team, cost,
+                                scratch, team, cost,
                                 minX, minY, maxX, maxY,
                                 x + y * wwidth,
                                 otherX + otherY * wwidth,
@@ -590,20 +624,22 @@ public class ControlPathfinder implements Runnable{
                             );
 
                             if(connectionCost != -1f){
-                                if(cluster.portalConnections[direction] == null) cluster.portalConnections[direction] = new LongSeq[cluster.portals[direction].size];
-                                if(cluster.portalConnections[otherDir] == null) cluster.portalConnections[otherDir] = new LongSeq[cluster.portals[otherDir].size];
-                                if(cluster.portalConnections[direction][i] == null) cluster.portalConnections[direction][i] = new LongSeq(8);
-                                if(cluster.portalConnections[otherDir][j] == null) cluster.portalConnections[otherDir][j] = new LongSeq(8);
+                                if(portalConnections[direction] == null) portalConnections[direction] = new LongSeq[clusterPortals[direction].size];
+                                if(portalConnections[otherDir] == null) portalConnections[otherDir] = new LongSeq[clusterPortals[otherDir].size];
+                                if(portalConnections[direction][i] == null) portalConnections[direction][i] = new LongSeq(8);
+                                if(portalConnections[otherDir][j] == null) portalConnections[otherDir][j] = new LongSeq(8);
 
                                 //TODO: can there be duplicate edges??
-                                cluster.portalConnections[direction][i].add(IntraEdge.get(otherDir, j, connectionCost));
-                                cluster.portalConnections[otherDir][j].add(IntraEdge.get(direction, i, connectionCost));
+                                portalConnections[direction][i].add(IntraEdge.get(otherDir, j, connectionCost));
+                                portalConnections[otherDir][j].add(IntraEdge.get(direction, i, connectionCost));
                             }
                         }
                     }
                 }
             }
         }
+
+        return portalConnections;
     }
 
     //distance heuristic: manhattan
@@ -622,9 +658,9 @@ public class ControlPathfinder implements Runnable{
     }
 
     /** @return -1 if no path was found */
-    float innerAstar(int team, PathCost cost, int minX, int minY, int maxX, int maxY, int startPos, int goalPos, int goalX1, int goalY1, int goalX2, int goalY2){
-        var frontier = innerFrontier;
-        var costs = innerCosts;
+    float innerAstar(ClusterScratch scratch, int team, PathCost cost, int minX, int minY, int maxX, int maxY, int startPos, int goalPos, int goalX1, int goalY1, int goalX2, int goalY2){
+        var frontier = scratch.frontier;
+        var costs = scratch.costs;
 
         frontier.clear();
         costs.clear();
@@ -730,7 +766,7 @@ public class ControlPathfinder implements Runnable{
                 otherY = (moveDirs[dir * 2 + 1] * otherAverage + oy);
 
                 float connectionCost = innerAstar(
-                team, cost,
+                scratch, team, cost,
                 minX, minY, maxX, maxY,
                 tileX + tileY * wwidth,
                 otherX + otherY * wwidth,
@@ -780,8 +816,13 @@ public class ControlPathfinder implements Runnable{
         return Math.abs(x1 - x2) + Math.abs(y1 - y2);
     }
 
-    @Nullable IntSeq clusterAstar(PathRequest request, int pathCost, int startNodeIndex, int endNodeIndex){
-        var result = request.resultPath;
+    /**
+     * Pathfinding thread only. The returned sequence is reused by the next search.
+     * @param joinable nodes with a known path to the end node; the search ends early at any of these.
+     * @return the nodes to pass through after the start node, or null if no path exists.
+     */
+    @Nullable IntSeq clusterAstar(int team, int pathCost, int startNodeIndex, int endNodeIndex, @Nullable IntSet joinable){
+        var result = nodePath;
 
         if(startNodeIndex == endNodeIndex){
             result.clear();
@@ -789,29 +830,27 @@ public class ControlPathfinder implements Runnable{
             return result;
         }
 
-        var team = request.team;
+        var costs = nodeCosts;
+        var cameFrom = nodeCameFrom;
+        var frontier = nodeFrontier;
 
-        if(request.costs == null) request.costs = new IntFloatMap();
-        if(request.cameFrom == null) request.cameFrom = new IntIntMap();
-        if(request.frontier == null) request.frontier = new PathfindQueue();
-
-        //note: these are NOT cleared, it is assumed that this function cleans up after itself at the end
-        //is this a good idea? don't know, might hammer the GC with unnecessary objects too
-        var costs = request.costs;
-        var cameFrom = request.cameFrom;
-        var frontier = request.frontier;
+        costs.clear();
+        cameFrom.clear();
+        frontier.clear();
 
         cameFrom.put(startNodeIndex, startNodeIndex);
         costs.put(startNodeIndex, 0);
         frontier.add(startNodeIndex, 0);
 
         boolean foundEnd = false;
+        int last = endNodeIndex;
 
         while(frontier.size > 0){
             int current = frontier.poll();
 
-            if(current == endNodeIndex){
+            if(current == endNodeIndex || (joinable != null && joinable.contains(current))){
                 foundEnd = true;
+                last = current;
                 break;
             }
 
@@ -826,7 +865,7 @@ public class ControlPathfinder implements Runnable{
 
             //edges for the cluster the node is 'in'
             if(innerCons != null){
-                checkEdges(request, team, pathCost, current, endNodeIndex, cx, cy, innerCons);
+                checkEdges(team, pathCost, current, endNodeIndex, cx, cy, innerCons);
             }
 
             //edges that this node 'faces' from the other side
@@ -836,21 +875,15 @@ public class ControlPathfinder implements Runnable{
                 int relativeDir = (dir + 2) % 4;
                 LongSeq outerCons = nextCluster.portalConnections[relativeDir] == null || nextCluster.portalConnections[relativeDir].length <= portal ? null : nextCluster.portalConnections[relativeDir][portal];
                 if(outerCons != null){
-                    checkEdges(request, team, pathCost, current, endNodeIndex, nextCx, nextCy, outerCons);
+                    checkEdges(team, pathCost, current, endNodeIndex, nextCx, nextCy, outerCons);
                 }
             }
         }
 
-        //null them out, so they get GC'ed later
-        //there's no reason to keep them around and waste memory, since this path may never be recalculated
-        request.costs = null;
-        request.cameFrom = null;
-        request.frontier = null;
-
         if(foundEnd){
             result.clear();
 
-            int cur = endNodeIndex;
+            int cur = last;
             while(cur != startNodeIndex){
                 result.add(cur);
                 cur = cameFrom.get(cur);
@@ -863,20 +896,22 @@ public class ControlPathfinder implements Runnable{
         return null;
     }
 
-    private void checkEdges(PathRequest request, int team, int pathCost, int current, int goal, int cx, int cy, LongSeq connections){
+    private void checkEdges(int team, int pathCost, int current, int goal, int cx, int cy, LongSeq connections){
+        var costs = nodeCosts;
+
         for(int i = 0; i < connections.size; i++){
             long con = connections.items[i];
             float cost = IntraEdge.cost(con);
             int otherDir = IntraEdge.dir(con), otherPortal = IntraEdge.portal(con);
             int next = makeNodeIndex(cx, cy, otherDir, otherPortal);
 
-            float newCost = request.costs.get(current) + cost;
+            float newCost = costs.get(current) + cost;
 
-            if(newCost < request.costs.get(next, Float.POSITIVE_INFINITY)){
-                request.costs.put(next, newCost);
+            if(newCost < costs.get(next, Float.POSITIVE_INFINITY)){
+                costs.put(next, newCost);
 
-                request.frontier.add(next, newCost + clusterNodeHeuristic(team, pathCost, next, goal));
-                request.cameFrom.put(next, current);
+                nodeFrontier.add(next, newCost + clusterNodeHeuristic(team, pathCost, next, goal));
+                nodeCameFrom.put(next, current);
             }
         }
     }
@@ -1015,15 +1050,22 @@ public class ControlPathfinder implements Runnable{
             return;
         }
 
-        var nodePath = clusterAstar(request, costId, node, dest);
+        FieldCache cache = fields.get(Pack.longInt(goalPos, costId));
+        //searches are only shared within a team, as every team has its own cluster graph
+        IntSet joinable = cache == null || cache.team != team ? null : cache.pathNodes;
+
+        //another request already found a path from this node, so its clusters are part of the field already
+        if(joinable != null && joinable.contains(node)){
+            return;
+        }
+
+        var nodePath = clusterAstar(team, costId, node, dest, joinable);
 
         //no result found, bail out.
         if(nodePath == null){
             request.notFound = true;
             return;
         }
-
-        FieldCache cache = fields.get(Pack.longInt(goalPos, costId));
         //if true, extra values are added on the sides of existing field cells that face new cells.
         boolean addingFrontier = true;
 
@@ -1038,6 +1080,11 @@ public class ControlPathfinder implements Runnable{
             addingFrontier = false; //when it's a new field, there is no need to add to the frontier to merge the flowfield
         }
 
+        if(cache.team == team){
+            if(node != Integer.MAX_VALUE) cache.pathNodes.add(node);
+            cache.pathNodes.addAll(nodePath);
+        }
+
         if(nodePath != null){
             int cx = unitX / clusterSize, cy = unitY / clusterSize;
 
@@ -1452,9 +1499,16 @@ public class ControlPathfinder implements Runnable{
             }
         }
 
+        //paths through this cluster may not connect anymore; which nodes relied on it isn't known, so no known path of these fields can be joined
+        for(var field : fields.values()){
+            if(field.team == team && field.costId == pathCost && field.fields.containsKey(index)){
+                field.pathNodes.clear();
+            }
+        }
     }
 
-    private void updateClustersComplete(int clusterIndex){
+    //queues an update for every team and cost that has a cluster at this index
+    private void queueUpdates(int clusterIndex, boolean complete){
         for(int team = 0; team < clusters.length; team++){
             var dim1 = clusters[team];
             if(dim1 != null){
@@ -1463,8 +1517,14 @@ public class ControlPathfinder implements Runnable{
                     if(dim2 != null){
                         var cluster = dim2[clusterIndex];
                         if(cluster != null){
-                            updateCluster(team, pathCost, clusterIndex % cwidth, clusterIndex / cwidth);
-                            clusterChanged(team, pathCost, clusterIndex % cwidth, clusterIndex / cwidth);
+                            if(updateCount >= updates.size) updates.add(new ClusterUpdate());
+
+                            var update = updates.items[updateCount++];
+                            update.team = team;
+                            update.pathCost = pathCost;
+                            update.index = clusterIndex;
+                            update.complete = complete;
+                            update.cluster = cluster;
                         }
                     }
                 }
@@ -1472,20 +1532,125 @@ public class ControlPathfinder implements Runnable{
         }
     }
 
-    private void updateClustersInner(int clusterIndex){
-        for(int team = 0; team < clusters.length; team++){
-            var dim1 = clusters[team];
-            if(dim1 != null){
-                for(int pathCost = 0; pathCost < dim1.length; pathCost++){
-                    var dim2 = dim1[pathCost];
-                    if(dim2 != null){
-                        var cluster = dim2[clusterIndex];
-                        if(cluster != null){
-                            updateInnerEdges(team, pathCost, clusterIndex % cwidth, clusterIndex / cwidth, cluster);
-                            clusterChanged(team, pathCost, clusterIndex % cwidth, clusterIndex / cwidth);
-                        }
-                    }
+    /**
+     * Recomputes all queued clusters. Portals and inner edges of different clusters are computed in parallel, but only
+     * published to the cluster graph on this thread between the two steps, so searches never see a partially updated cluster.
+     */
+    private void updateClusters(){
+        updateCount = 0;
+
+        clustersToUpdate.each(cluster -> {
+            queueUpdates(cluster, true);
+
+            //just in case: don't redundantly update inner clusters after you've recalculated it entirely
+            clustersToInnerUpdate.remove(cluster);
+        });
+
+        //only recompute the inner links
+        clustersToInnerUpdate.each(cluster -> queueUpdates(cluster, false));
+
+        clustersToInnerUpdate.clear();
+        clustersToUpdate.clear();
+
+        if(updateCount == 0) return;
+
+        runUpdates(false);
+
+        for(int i = 0; i < updateCount; i++){
+            var update = updates.items[i];
+            if(update.complete){
+                publishPortals(update);
+            }
+        }
+
+        runUpdates(true);
+
+        for(int i = 0; i < updateCount; i++){
+            var update = updates.items[i];
+            int cx = update.index % cwidth, cy = update.index / cwidth;
+
+            update.cluster.portalConnections = update.connections;
+            update.connections = null;
+            update.cluster = null;
+            clusterChanged(update.team, update.pathCost, cx, cy);
+        }
+    }
+
+    private void runUpdates(boolean edges){
+        if(updateCount <= updateGrain){
+            for(int i = 0; i < updateCount; i++){
+                runUpdate(updates.items[i], edges, scratch);
+            }
+        }else{
+            //recomputed on the pool shared with other parallel work
+            asyncCore.pool().invoke(new ClusterSpan(updates.items, edges, 0, updateCount));
+        }
+    }
+
+    private void runUpdate(ClusterUpdate update, boolean edges, ClusterScratch scratch){
+        int cx = update.index % cwidth, cy = update.index / cwidth;
+        PathCost cost = idToCost(update.pathCost);
+
+        if(edges){
+            update.connections = innerEdges(update.team, cost, cx, cy, update.cluster.portals, scratch);
+        }else if(update.complete){
+            for(int direction = 0; direction < 4; direction++){
+                int otherX = cx + Geometry.d4x(direction), otherY = cy + Geometry.d4y(direction);
+                update.portals[direction].clear();
+
+                if(otherX < 0 || otherY < 0 || otherX >= cwidth || otherY >= cheight) continue;
+
+                scanPortals(update.team, cost, cx, cy, direction, update.portals[direction]);
+            }
+        }
+    }
+
+    //same as the portal part of updateCluster, with portals that were already found
+    private void publishPortals(ClusterUpdate update){
+        int cx = update.index % cwidth, cy = update.index / cwidth;
+        Cluster[] dim2 = clusters[update.team][update.pathCost];
+        Cluster cluster = update.cluster;
+
+        for(int direction = 0; direction < 4; direction++){
+            int otherX = cx + Geometry.d4x(direction), otherY = cy + Geometry.d4y(direction);
+            //out of bounds, no portals in this direction
+            if(otherX < 0 || otherY < 0 || otherX >= cwidth || otherY >= cheight){
+                continue;
+            }
+
+            Cluster other = dim2[otherX + otherY * cwidth];
+            //share portals with the other cluster
+            IntSeq portals = other == null ? new IntSeq(4) : other.portals[(direction + 2) % 4];
+
+            portals.clear();
+            portals.addAll(update.portals[direction]);
+            cluster.portals[direction] = portals;
+        }
+    }
+
+    /** Recomputes a range of queued clusters, splitting it up between workers. */
+    class ClusterSpan extends RecursiveAction{
+        final ClusterUpdate[] updates;
+        final boolean edges;
+        final int from, to;
+
+        ClusterSpan(ClusterUpdate[] updates, boolean edges, int from, int to){
+            this.updates = updates;
+            this.edges = edges;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute(){
+            if(to - from <= updateGrain){
+                ClusterScratch scratch = workerScratch.get();
+                for(int i = from; i < to; i++){
+                    runUpdate(updates[i], edges, scratch);
                 }
+            }else{
+                int mid = (from + to) >>> 1;
+                invokeAll(new ClusterSpan(updates, edges, from, mid), new ClusterSpan(updates, edges, mid, to));
             }
         }
     }
@@ -1502,20 +1667,7 @@ public class ControlPathfinder implements Runnable{
                 if(state.isPlaying()){
                     queue.run();
 
-                    clustersToUpdate.each(cluster -> {
-                        updateClustersComplete(cluster);
-
-                        //just in case: don't redundantly update inner clusters after you've recalculated it entirely
-                        clustersToInnerUpdate.remove(cluster);
-                    });
-
-                    clustersToInnerUpdate.each(cluster -> {
-                        //only recompute the inner links
-                        updateClustersInner(cluster);
-                    });
-
-                    clustersToInnerUpdate.clear();
-                    clustersToUpdate.clear();
+                    updateClusters();
 
                     //periodically check for invalidated paths
                     if(Time.timeSinceMillis(lastInvalidCheck) > invalidateCheckInterval){
@@ -0,0 +1,195 @@
+package mindustry.ai;
+
+import java.util.*;
+
+/** One int per tile of a flow field, either as a plain array or as compact blocks that are only allocated once written to. */
+public abstract class FieldData{
+
+    /** @return the value at a packed tile position. */
+    public abstract int get(int pos);
+
+    public abstract void set(int pos, int value);
+
+    /** Sets all values, releasing memory where possible. */
+    public abstract void fill(int value);
+
+    /** Copies all values of another instance of the same type and size. */
+    public abstract void copyFrom(FieldData other);
+
+    /** @return a new instance of the same type with the same values. */
+    public abstract FieldData copy();
+
+    /** @return the value stored values will compare equal to, after truncation. */
+    public int wrap(int value){
+        return value;
+    }
+
+    /** @return whether a value had to be clamped since the last fill. */
+    public boolean saturated(){
+        return false;
+    }
+
+    /** @return approximate memory used, in bytes. */
+    public abstract long memory();
+
+    /** A plain int array. */
+    public static class Dense extends FieldData{
+        public final int[] values;
+
+        public Dense(int length){
+            values = new int[length];
+        }
+
+        @Override
+        public int get(int pos){
+            return values[pos];
+        }
+
+        @Override
+        public void set(int pos, int value){
+            values[pos] = value;
+        }
+
+        @Override
+        public void fill(int value){
+            Arrays.fill(values, value);
+        }
+
+        @Override
+        public void copyFrom(FieldData other){
+            System.arraycopy(((Dense)other).values, 0, values, 0, values.length);
+        }
+
+        @Override
+        public FieldData copy(){
+            Dense out = new Dense(values.length);
+            out.copyFrom(this);
+            return out;
+        }
+
+        @Override
+        public long memory(){
+            return 16L + values.length * 4L;
+        }
+    }
+
+    /**
+     * 16 bits per tile, in blocks of 32x32 tiles that are allocated on the first write of a non-default value.
+     * Saturating instances store values from -1 to 65534, clamping anything above; -1 is the default.
+     * Wrapping instances only keep the lowest 16 bits, see {@link #wrap(int)}; 0 is the default.
+     */
+    public static class Tiled extends FieldData{
+        static final int blockShift = 5, blockSize = 1 << blockShift, blockMask = blockSize - 1;
+        public static final int maxValue = 65534;
+
+        final int width, height, blocksX;
+        final boolean saturating;
+        final char[][] blocks;
+        boolean saturated;
+
+        public Tiled(int width, int height, boolean saturating){
+            this.width = width;
+            this.height = height;
+            this.saturating = saturating;
+            blocksX = (width + blockMask) >> blockShift;
+            blocks = new char[blocksX * ((height + blockMask) >> blockShift)][];
+        }
+
+        int block(int pos){
+            return ((pos / width) >> blockShift) * blocksX + ((pos % width) >> blockShift);
+        }
+
+        int index(int pos){
+            return (((pos / width) & blockMask) << blockShift) | ((pos % width) & blockMask);
+        }
+
+        @Override
+        public int get(int pos){
+            char[] block = blocks[block(pos)];
+            int stored = block == null ? 0 : block[index(pos)];
+            return saturating ? stored - 1 : stored;
+        }
+
+        @Override
+        public void set(int pos, int value){
+            int stored;
+            if(saturating){
+                if(value > maxValue){
+                    value = maxValue;
+                    saturated = true;
+                }
+                stored = value + 1;
+            }else{
+                stored = value & 0xffff;
+            }
+
+            int b = block(pos);
+            char[] block = blocks[b];
+            if(block == null){
+                //unallocated blocks only hold default values
+                if(stored == 0) return;
+                block = blocks[b] = new char[blockSize * blockSize];
+            }
+            block[index(pos)] = (char)stored;
+        }
+
+        @Override
+        public void fill(int value){
+            saturated = false;
+            int stored = saturating ? Math.min(value, maxValue) + 1 : value & 0xffff;
+
+            for(int i = 0; i < blocks.length; i++){
+                if(stored == 0){
+                    blocks[i] = null;
+                }else{
+                    if(blocks[i] == null) blocks[i] = new char[blockSize * blockSize];
+                    Arrays.fill(blocks[i], (char)stored);
+                }
+            }
+        }
+
+        @Override
+        public void copyFrom(FieldData other){
+            Tiled from = (Tiled)other;
+            for(int i = 0; i < blocks.length; i++){
+                char[] source = from.blocks[i];
+                if(source == null){
+                    blocks[i] = null;
+                }else if(blocks[i] == null){
+                    //other threads may read this at any time, so new blocks are only published once filled
+                    char[] block = new char[source.length];
+                    System.arraycopy(source, 0, block, 0, source.length);
+                    blocks[i] = block;
+                }else{
+                    System.arraycopy(source, 0, blocks[i], 0, source.length);
+                }
+            }
+        }
+
+        @Override
+        public FieldData copy(){
+            Tiled out = new Tiled(width, height, saturating);
+            out.copyFrom(this);
+            return out;
+        }
+
+        @Override
+        public int wrap(int value){
+            return saturating ? Math.min(value, maxValue) : value & 0xffff;
+        }
+
+        @Override
+        public boolean saturated(){
+            return saturated;
+        }
+
+        @Override
+        public long memory(){
+            long total = 16L + blocks.length * 4L;
+            for(char[] block : blocks){
+                if(block != null) total += 16L + block.length * 2L;
+            }
+            return total;
+        }
+    }
+}
@@ -10,11 +10,15 @@ import mindustry.core.*;
 import mindustry.game.EventType.*;
 import mindustry.game.*;
 import mindustry.gen.*;
+import mindustry.net.Administration.*;
 import mindustry.world.*;
 import mindustry.world.blocks.environment.*;
 import mindustry.world.blocks.storage.*;
 import mindustry.world.meta.*;
 
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
 import static mindustry.Vars.*;
 
 public class Pathfinder implements Runnable{
@@ -22,6 +26,9 @@ public class Pathfinder implements Runnable{
     private static final int updateFPS = 60;
     private static final int updateInterval = 1000 / updateFPS;
 
+    /** Maximum amount of position target fields kept at once; the least recently used ones are removed first. */
+    public static int maxPositionFields = 16;
+
     /** cached world size */
     static int wwidth, wheight;
 
@@ -66,13 +73,19 @@ public class Pathfinder implements Runnable{
 
     /** tile data, see PathTileStruct - kept as a separate array for threading reasons */
     int[] tiles = new int[0];
+    /** tiles changed since the last update, as pairs of position and previous packed value. Only recorded for incremental repairs. Main thread only. */
+    IntSeq changes = new IntSeq();
+    /** buffer of changes that the pathfinding thread is done with, swapped with {@link #changes} on the next update */
+    final AtomicReference<IntSeq> freeChanges = new AtomicReference<>();
 
     /** maps team, cost, type to flow field*/
     Flowfield[][][] cache;
     /** unordered array of path data for iteration only. DO NOT iterate or access this in the main thread. */
-    Seq<Flowfield> threadList = new Seq<>(), mainList = new Seq<>();
+    Seq<Flowfield> threadList = new Seq<>(Flowfield.class), mainList = new Seq<>();
     /** handles task scheduling on the update thread. */
     TaskQueue queue = new TaskQueue();
+    /** position target fields in order of creation. Main thread only. */
+    Seq<Flowfield> positionFields = new Seq<>();
     /** Current pathfinding thread */
     @Nullable Thread thread;
     IntSeq tmpArray = new IntSeq();
@@ -87,14 +100,16 @@ public class Pathfinder implements Runnable{
             tiles = new int[world.width() * world.height()];
             wwidth = world.width();
             wheight = world.height();
-            threadList = new Seq<>();
+            threadList = new Seq<>(Flowfield.class);
             mainList = new Seq<>();
+            positionFields.clear();
             clearCache();
 
             for(int i = 0; i < tiles.length; i++){
                 Tile tile = world.tiles.geti(i);
                 tiles[i] = packTile(tile);
             }
+            changes.clear();
 
             //don't bother setting up paths unless necessary
             if(state.rules.waveTeam.needsFlowField() && !net.client()){
@@ -137,7 +152,7 @@ public class Pathfinder implements Runnable{
                             int arr = other.array();
                             //the other tile is no longer near solid, remove the solid bit
                             if(!otherNearSolid && tiles.length > arr){
-                                tiles[arr] &= ~(PathTile.bitMaskNearSolid);
+                                setTile(arr, tiles[arr] & ~(PathTile.bitMaskNearSolid));
                             }
                         }
                     }
@@ -168,7 +183,7 @@ public class Pathfinder implements Runnable{
 
                 //other tile is now near solid
                 if(solid && !tile.block().teamPassable){
-                    tiles[other.array()] |= PathTile.bitMaskNearSolid;
+                    setTile(other.array(), tiles[other.array()] | PathTile.bitMaskNearSolid);
                 }
             }
         }
@@ -192,6 +207,16 @@ public class Pathfinder implements Runnable{
         );
     }
 
+    /** Sets packed tile data, remembering the previous value for flow field repairs. Main thread only. */
+    private void setTile(int pos, int value){
+        int old = tiles[pos];
+        if(old != value){
+            //clients don't update flow fields, and full recalculations don't need to know what changed
+            if(!net.client() && Config.incrementalPathfinding.bool()) changes.add(pos, old);
+            tiles[pos] = value;
+        }
+    }
+
     public int get(int x, int y){
         return tiles[x + y * wwidth];
     }
@@ -217,30 +242,60 @@ public class Pathfinder implements Runnable{
     }
 
     /** Update a tile in the internal pathfinding grid.
-     * Causes a complete pathfinding recalculation. Main thread only. */
+     * Causes a complete pathfinding recalculation, unless incremental repairs are enabled. Main thread only. */
     public void updateTile(Tile tile){
         if(net.client()) return;
 
         tile.getLinkedTiles(t -> {
             int pos = t.array();
             if(pos < tiles.length){
-                tiles[pos] = packTile(t);
+                setTile(pos, packTile(t));
             }
         });
 
+        boolean incremental = Config.incrementalPathfinding.bool();
+        IntSeq changed = null;
+        if(incremental && changes.size > 0){
+            //hand the changes to the thread, and continue with the buffer it returned last time
+            changed = changes;
+            IntSeq free = freeChanges.getAndSet(null);
+            changes = free != null ? free : new IntSeq();
+        }
+        Seq<Flowfield> retargeted = null;
+
         //can't iterate through array so use the map, which should not lead to problems
         for(Flowfield path : mainList){
             if(path != null){
                 synchronized(path.targets){
+                    tmpArray.clear();
+                    tmpArray.addAll(path.targets);
                     path.updateTargetPositions();
+                    if(!tmpArray.equals(path.targets)){
+                        if(retargeted == null) retargeted = new Seq<>();
+                        retargeted.add(path);
+                    }
                 }
             }
         }
 
-        //mark every flow field as dirty, so it updates when it's done
+        IntSeq changedTiles = changed;
+        Seq<Flowfield> retargetedFields = retargeted;
         queue.post(() -> {
             for(Flowfield data : threadList){
-                data.dirty = true;
+                //fields with new targets or an unfinished search have to start over; the rest only repair what changed
+                data.request();
+
+                if(incremental && data.hasComplete && !data.dirty && (data.frontier.size == 0 || data.repairing) && (retargetedFields == null || !retargetedFields.contains(data, true))){
+                    if(changedTiles != null) data.pending.addAll(changedTiles);
+                }else{
+                    //mark the flow field as dirty, so it updates when it's done
+                    data.dirty = true;
+                }
+            }
+
+            if(changedTiles != null){
+                changedTiles.clear();
+                freeChanges.set(changedTiles);
             }
         });
     }
@@ -256,16 +311,7 @@ public class Pathfinder implements Runnable{
                     queue.run();
 
                     //each update time (not total!) no longer than maxUpdate
-                    for(Flowfield data : threadList){
-
-                        //if it's dirty and there is nothing to update, begin updating once more
-                        if(data.dirty && data.frontier.size == 0){
-                            updateTargets(data);
-                            data.dirty = false;
-                        }
-
-                        updateFrontier(data, maxUpdate);
-                    }
+                    updateFields(maxUpdate);
                 }
 
                 try{
@@ -280,24 +326,106 @@ public class Pathfinder implements Runnable{
         }
     }
 
+    /**
+     * Runs all queued tasks, then updates every flow field until it is complete.
+     * Blocks the calling thread; only use this while the pathfinding thread is idle, e.g. when the game is not playing.
+     */
+    public void updateAll(){
+        queue.run();
+
+        boolean working = true;
+        while(working){
+            updateFields(-1);
+
+            working = false;
+            for(Flowfield data : threadList){
+                working |= data.dirty || data.pending.size > 0 || data.frontier.size > 0;
+            }
+        }
+    }
+
+    /** Updates all flow fields, each one on a worker of the shared {@link mindustry.async.AsyncCore#pool()} if there are several. Pathfinding thread only. */
+    private void updateFields(long nsToRun){
+        if(threadList.size == 1){
+            updateField(threadList.first(), nsToRun);
+        }else if(threadList.size > 1){
+            asyncCore.pool().invoke(new FieldSpan(threadList.items, nsToRun, 0, threadList.size));
+        }
+    }
+
+    /** Starts a new search or repair if there is nothing left to do, then updates the frontier. Pathfinding thread only. */
+    void updateField(Flowfield data, long nsToRun){
+        if(data.frontier.size == 0){
+            if(data.dirty){
+                //if it's dirty and there is nothing to update, begin updating once more
+                updateTargets(data);
+                data.dirty = false;
+            }else if(data.pending.size > 0){
+                repair(data);
+            }
+        }
+
+        updateFrontier(data, nsToRun);
+    }
+
+    /** @return all flow fields that have been created for this world. Main thread only. */
+    public Seq<Flowfield> getFields(){
+        return mainList;
+    }
+
     public Flowfield getField(Team team, int costType, int fieldType){
         if(cache[team.id][costType][fieldType] == null){
             Flowfield field = fieldTypes.get(fieldType).get();
             field.team = team;
             field.cost = costTypes.get(costType);
+            field.fieldType = fieldType;
             field.targets.clear();
             field.getPositions(field.targets);
 
             cache[team.id][costType][fieldType] = field;
             queue.post(() -> registerPath(field));
+
+            if(field instanceof PositionTarget){
+                positionFields.add(field);
+                while(positionFields.size > maxPositionFields){
+                    Flowfield oldest = positionFields.first();
+                    for(Flowfield other : positionFields){
+                        if(other.lastAccess < oldest.lastAccess) oldest = other;
+                    }
+                    evict(oldest);
+                }
+            }
+        }
+
+        Flowfield field = cache[team.id][costType][fieldType];
+        field.lastAccess = Time.millis();
+        return field;
+    }
+
+    /** Removes a flow field, freeing its memory. It is created again the next time it is requested. Main thread only. */
+    private void evict(Flowfield field){
+        field.evicted = true;
+        cache[field.team.id][field.getCostType()][field.fieldType] = null;
+        positionFields.remove(field, true);
+        mainList.remove(field, true);
+        queue.post(() -> threadList.remove(field, true));
+    }
+
+    /** @return approximate memory used by tile data and all flow fields, in bytes. Main thread only. */
+    public long memoryUsage(){
+        long total = tiles.length * 4L;
+        for(Flowfield field : mainList){
+            total += field.memoryUsage();
         }
-        return cache[team.id][costType][fieldType];
+        return total;
     }
 
     /** Gets next tile to travel to. Main thread only. */
     public @Nullable Tile getTargetTile(Tile tile, Flowfield path){
         if(tile == null) return null;
 
+        path.lastAccess = Time.millis();
+
         //uninitialized flowfields are not applicable
         if(!path.initialized){
             return tile;
@@ -322,9 +450,9 @@ public class Pathfinder implements Runnable{
         }
 
         //use complete weights if possible; these contain a complete flow field that is not being updated
-        int[] values = path.hasComplete ? path.completeWeights : path.weights;
+        FieldData values = path.hasComplete ? path.completeWeights : path.weights;
         int apos = tile.array();
-        int value = values[apos];
+        int value = values.get(apos);
 
         Tile current = null;
         int tl = 0;
@@ -336,10 +464,12 @@ public class Pathfinder implements Runnable{
 
             int packed = world.packArray(dx, dy);
 
-            if(values[packed] < value && (current == null || values[packed] < tl) && path.passable(packed) &&
+            int otherValue = values.get(packed);
+
+            if(otherValue < value && (current == null || otherValue < tl) && path.passable(packed) &&
             !(point.x != 0 && point.y != 0 && (!path.passable(world.packArray(tile.x + point.x, tile.y)) || !path.passable(world.packArray(tile.x, tile.y + point.y))))){ //diagonal corner trap
                 current = other;
-                tl = values[packed];
+                tl = otherValue;
             }
         }
 
@@ -353,19 +483,185 @@ public class Pathfinder implements Runnable{
 
         //increment search, but do not clear the frontier
         path.search++;
+        path.request();
+
+        //the last search did not fit into compact weights, so this one uses full ones
+        if(path.widen){
+            path.widen = false;
+            path.weights = new FieldData.Dense(tiles.length);
+            path.weights.fill(impassable);
+            path.searches = new FieldData.Dense(tiles.length);
+        }
+
+        //compact search ids wrap around, after which unwritten tiles and tiles of a search 65536 searches ago would read as visited
+        if(path.searches.wrap(path.search) == 0){
+            path.searches.fill(0);
+            path.search++;
+        }
+
+        //a new search supersedes any repair
+        path.pending.clear();
+        path.repairing = false;
+        path.clearTouched();
 
         synchronized(path.targets){
             //add targets
             for(int i = 0; i < path.targets.size; i++){
                 int pos = path.targets.get(i);
 
-                path.weights[pos] = 0;
-                path.searches[pos] = path.search;
+                path.weights.set(pos, 0);
+                path.searches.set(pos, path.search);
                 path.frontier.addFirst(pos);
             }
         }
     }
 
+    /**
+     * Re-expands the parts of a complete flow field that are affected by its pending tile changes. Pathfinding thread only.
+     * Tiles that got more expensive invalidate every tile whose weight was derived from them, and the invalidated region is searched
+     * again from its border. Tiles that got cheaper only have to be searched again from their neighbors.
+     */
+    private void repair(Flowfield path){
+        FieldData weights = path.weights, searches = path.searches;
+        int[] pending = path.pending.items;
+        int search = searches.wrap(path.search), team = path.team.id, size = path.pending.size;
+        PathCost cost = path.cost;
+
+        IntIntMap oldCosts = path.oldCosts;
+        IntSeq invalid = path.invalid;
+
+        //remember the cost of every changed tile before its first change in this batch
+        oldCosts.clear();
+        for(int i = size - 2; i >= 0; i -= 2){
+            oldCosts.put(pending[i], cost.getCost(team, pending[i + 1]));
+        }
+
+        path.repairing = true;
+        invalid.clear();
+
+        for(var entry : oldCosts){
+            int pos = entry.key, oldCost = entry.value, newCost = cost.getCost(team, tiles[pos]);
+
+            //targets always have a weight of 0, regardless of their cost; unreached tiles have nothing derived from them
+            if(oldCost == newCost || searches.get(pos) != search || weights.get(pos) == 0) continue;
+
+            if(newCost == impassable || (oldCost != impassable && newCost > oldCost)){
+                invalidate(path, pos);
+            }
+        }
+
+        for(var entry : oldCosts){
+            int pos = entry.key, oldCost = entry.value, newCost = cost.getCost(team, tiles[pos]);
+
+            if(oldCost == newCost || (weights.get(pos) == 0 && searches.get(pos) == search)) continue;
+
+            if(newCost != impassable && (oldCost == impassable || newCost < oldCost)){
+                //let the neighbors relax into the cheaper tile
+                searches.set(pos, search - 1);
+                path.touch(pos);
+                seedNeighbors(path, pos);
+            }
+        }
+
+        //search the invalidated region again, starting from its border
+        for(int i = 0; i < invalid.size; i++){
+            seedNeighbors(path, invalid.items[i]);
+        }
+
+        path.pending.clear();
+
+        //nothing could be reached again, so the repair is already complete
+        if(path.frontier.size == 0){
+            publish(path);
+        }
+    }
+
+    /** Invalidates a tile and every tile whose weight was derived from it. */
+    private void invalidate(Flowfield path, int root){
+        FieldData weights = path.weights, searches = path.searches;
+        int search = searches.wrap(path.search), team = path.team.id;
+        IntQueue invalidQueue = path.invalidQueue;
+        IntIntMap oldCosts = path.oldCosts;
+
+        searches.set(root, search - 1);
+        invalidQueue.clear();
+        invalidQueue.addFirst(root);
+
+        while(invalidQueue.size > 0){
+            int tile = invalidQueue.removeLast();
+            int weight = weights.get(tile);
+
+            weights.set(tile, impassable);
+            path.touch(tile);
+            path.invalid.add(tile);
+
+            if(weight == impassable) continue;
+
+            for(Point2 point : Geometry.d4){
+                int dx = (tile % wwidth) + point.x, dy = (tile / wwidth) + point.y;
+
+                if(dx < 0 || dy < 0 || dx >= wwidth || dy >= wheight) continue;
+
+                int other = tile + point.x + point.y * wwidth;
+                int otherWeight = weights.get(other);
+
+                //any tile that may have been reached through this one, using the cost it had back then
+                if(searches.get(other) == search && otherWeight > 0 && otherWeight == weights.wrap(weight + oldCosts.get(other, cost(path, team, other)))){
+                    searches.set(other, search - 1);
+                    invalidQueue.addFirst(other);
+                }
+            }
+        }
+    }
+
+    /** Adds all neighbors with a valid weight to the frontier. */
+    private void seedNeighbors(Flowfield path, int tile){
+        for(Point2 point : Geometry.d4){
+            int dx = (tile % wwidth) + point.x, dy = (tile / wwidth) + point.y;
+
+            if(dx < 0 || dy < 0 || dx >= wwidth || dy >= wheight) continue;
+
+            int other = tile + point.x + point.y * wwidth;
+            if(path.searches.get(other) == path.searches.wrap(path.search) && path.weights.get(other) != impassable){
+                path.frontier.addFirst(other);
+            }
+        }
+    }
+
+    private int cost(Flowfield path, int team, int pos){
+        return path.cost.getCost(team, tiles[pos]);
+    }
+
+    /** Copies finished weights over to the complete weights. */
+    private void publish(Flowfield path){
+        if(path.repairing){
+            //only copy over what the repair changed
+            int[] touched = path.touched.items;
+            for(int i = 0; i < path.touched.size; i++){
+                path.completeWeights.set(touched[i], path.weights.get(touched[i]));
+            }
+            path.clearTouched();
+            path.repairing = false;
+        }else if(path.completeWeights.getClass() != path.weights.getClass()){
+            //storage was widened; replace the complete weights at once, as they may be read at any time
+            path.completeWeights = path.weights.copy();
+        }else{
+            path.completeWeights.copyFrom(path.weights);
+        }
+        path.hasComplete = true;
+
+        //clamped weights don't lead anywhere, search again with full ones
+        if(path.weights.saturated()){
+            path.widen = true;
+            path.dirty = true;
+        }
+
+        if(path.requestTime != 0 && !path.dirty && path.pending.size == 0){
+            path.convergenceTime = Time.timeSinceNanos(path.requestTime);
+            path.requestTime = 0;
+        }
+    }
+
     private void preloadPath(Flowfield path){
         path.updateTargetPositions();
         registerPath(path);
@@ -379,22 +675,23 @@ public class Pathfinder implements Runnable{
      */
     private void registerPath(Flowfield path){
         path.lastUpdateTime = Time.millis();
+        path.request();
         path.setup(tiles.length);
 
         threadList.add(path);
 
         //add to main thread's list of paths
-        Core.app.post(() -> mainList.add(path));
+        Core.app.post(() -> {
+            if(!path.evicted) mainList.add(path);
+        });
 
         //fill with impassables by default
-        for(int i = 0; i < tiles.length; i++){
-            path.weights[i] = impassable;
-        }
+        path.weights.fill(impassable);
 
         //add targets
         for(int i = 0; i < path.targets.size; i++){
             int pos = path.targets.get(i);
-            path.weights[pos] = 0;
+            path.weights.set(pos, 0);
             path.frontier.addFirst(pos);
         }
     }
@@ -405,15 +702,19 @@ public class Pathfinder implements Runnable{
         long start = Time.nanos();
 
         int counter = 0;
+        FieldData weights = path.weights, searches = path.searches;
+        int search = searches.wrap(path.search);
 
         while(path.frontier.size > 0){
             int tile = path.frontier.removeLast();
-            if(path.weights == null) return; //something went horribly wrong, bail
-            int cost = path.weights[tile];
+            if(weights == null) return; //something went horribly wrong, bail
+            int cost = weights.get(tile);
 
             //pathfinding overflowed for some reason, time to bail. the next block update will handle this, hopefully
             if(path.frontier.size >= world.width() * world.height()){
                 path.frontier.clear();
+                //a partial repair can't be published
+                if(path.repairing) path.dirty = true;
                 return;
             }
 
@@ -427,10 +728,11 @@ public class Pathfinder implements Runnable{
                     int newPos = tile + point.x + point.y * wwidth;
                     int otherCost = path.cost.getCost(path.team.id, tiles[newPos]);
 
-                    if((path.weights[newPos] > cost + otherCost || path.searches[newPos] < path.search) && otherCost != impassable){
+                    if((weights.get(newPos) > cost + otherCost || searches.get(newPos) != search) && otherCost != impassable){
                         path.frontier.addFirst(newPos);
-                        path.weights[newPos] = cost + otherCost;
-                        path.searches[newPos] = (short)path.search;
+                        weights.set(newPos, cost + otherCost);
+                        searches.set(newPos, search);
+                        if(path.repairing) path.touch(newPos);
                     }
                 }
             }
@@ -446,8 +748,33 @@ public class Pathfinder implements Runnable{
 
         //there WERE some things in the frontier, but now they are gone, so the path is done; copy over latest data
         if(hadAny && path.frontier.size == 0){
-            System.arraycopy(path.weights, 0, path.completeWeights, 0, path.weights.length);
-            path.hasComplete = true;
+            publish(path);
+        }
+    }
+
+    /** Updates a range of flow fields, splitting it up between workers. */
+    class FieldSpan extends RecursiveAction{
+        final Flowfield[] fields;
+        final long nsToRun;
+        final int from, to;
+
+        FieldSpan(Flowfield[] fields, long nsToRun, int from, int to){
+            this.fields = fields;
+            this.nsToRun = nsToRun;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute(){
+            if(to - from <= 1){
+                for(int i = from; i < to; i++){
+                    updateField(fields[i], nsToRun);
+                }
+            }else{
+                int mid = (from + to) >>> 1;
+                invokeAll(new FieldSpan(fields, nsToRun, from, mid), new FieldSpan(fields, nsToRun, mid, to));
+            }
         }
     }
 
@@ -498,14 +825,33 @@ public class Pathfinder implements Runnable{
         protected boolean dirty = false;
 
         /** costs of getting to a specific tile */
-        public int[] weights;
-        /** search IDs of each position - the highest, most recent search is prioritized and overwritten */
-        public int[] searches;
+        public FieldData weights;
+        /** search IDs of each position - the most recent search is prioritized and overwritten */
+        public FieldData searches;
         /** the last "complete" weights of this tilemap. */
-        public int[] completeWeights;
+        public volatile FieldData completeWeights;
+        /** whether the weights were clamped, and have to be searched again with full storage */
+        boolean widen;
+        /** index in {@link #fieldTypes} */
+        int fieldType;
+        /** last time this field was requested or used, in milliseconds. Main thread only. */
+        long lastAccess;
+        /** whether this field was removed from the cache */
+        boolean evicted;
 
         /** search frontier, these are Pos objects */
         IntQueue frontier = new IntQueue();
+        /** tile changes waiting to be repaired, as pairs of position and previous packed tile */
+        final IntSeq pending = new IntSeq();
+        /** whether the frontier is repairing the field, instead of searching it again */
+        boolean repairing;
+        /** positions whose weights changed during the current repair */
+        final IntSeq touched = new IntSeq();
+        Bits touchedBits = new Bits();
+        /** scratch space of repairs */
+        final IntQueue invalidQueue = new IntQueue();
+        final IntSeq invalid = new IntSeq();
+        final IntIntMap oldCosts = new IntIntMap();
         /** all target positions; these positions have a cost of 0, and must be synchronized on! */
         final IntSeq targets = new IntSeq();
         /** current search ID */
@@ -514,15 +860,68 @@ public class Pathfinder implements Runnable{
         long lastUpdateTime;
         /** whether this flow field is ready to be used */
         boolean initialized;
+        /** when the oldest unpublished update was requested, or 0 if the weights are up to date */
+        long requestTime;
+        /** nanoseconds between the last requested update and its weights being published */
+        volatile long convergenceTime = -1;
 
         void setup(int length){
-            this.weights = new int[length];
-            this.searches = new int[length];
-            this.completeWeights = new int[length];
+            if(Config.compactFlowfields.bool()){
+                this.weights = new FieldData.Tiled(wwidth, wheight, true);
+                this.searches = new FieldData.Tiled(wwidth, wheight, false);
+                this.completeWeights = new FieldData.Tiled(wwidth, wheight, true);
+            }else{
+                this.weights = new FieldData.Dense(length);
+                this.searches = new FieldData.Dense(length);
+                this.completeWeights = new FieldData.Dense(length);
+            }
+            this.touchedBits = new Bits(length);
             this.frontier.ensureCapacity((length) / 4);
             this.initialized = true;
         }
 
+        void touch(int pos){
+            if(!touchedBits.get(pos)){
+                touchedBits.set(pos);
+                touched.add(pos);
+            }
+        }
+
+        void clearTouched(){
+            for(int i = 0; i < touched.size; i++){
+                touchedBits.clear(touched.items[i]);
+            }
+            touched.clear();
+        }
+
+        void request(){
+            if(requestTime == 0) requestTime = Time.nanos();
+        }
+
+        /** @return how long it took for the last update to be published in milliseconds, or -1 if the field is not complete yet. */
+        public float convergenceMillis(){
+            long time = convergenceTime;
+            return time < 0 ? -1f : time / 1000000f;
+        }
+
+        /** @return approximate memory used by this field, in bytes. */
+        public long memoryUsage(){
+            long total = (pending.items.length + touched.items.length + invalid.items.length) * 4L;
+            if(weights != null){
+                total += weights.memory() + searches.memory() + completeWeights.memory() + pathfinder.tiles.length / 8;
+            }
+            return total;
+        }
+
+        public Team getTeam(){
+            return team;
+        }
+
+        /** @return the index of this field's cost in {@link #costTypes}, or -1 for custom costs. */
+        public int getCostType(){
+            return costTypes.indexOf(cost, true);
+        }
+
         public boolean hasCompleteWeights(){
             return hasComplete && completeWeights != null;
         }
@@ -1,6 +1,7 @@
 package mindustry.async;
 
 import arc.*;
+import arc.math.*;
 import arc.struct.*;
 import arc.util.*;
 import mindustry.game.EventType.*;
@@ -15,10 +16,19 @@ public class AsyncCore{
         new PhysicsProcess()
     );
 
+    //processors queued during the building update
+    public final ParallelLogic logic = new ParallelLogic();
+
+    //tasks of the current frame, by process index
+    private final Seq<CompletableFuture<Void>> tasks = new Seq<>();
     //futures to be awaited
-    private final Seq<Future<?>> futures = new Seq<>();
+    private final Seq<CompletableFuture<Void>> futures = new Seq<>();
+    //nanoseconds each process took in the last frame, written by the worker that ran it
+    private long[] times = {};
+    //averaged process times, in milliseconds
+    private final Seq<WindowedMean> means = new Seq<>();
 
-    private ExecutorService executor;
+    private @Nullable ForkJoinPool executor;
 
     public AsyncCore(){
         Events.on(WorldLoadEvent.class, e -> {
@@ -30,12 +40,26 @@ public class AsyncCore{
 
         Events.on(ResetEvent.class, e -> {
             complete();
+            logic.reset();
             for(AsyncProcess p : processes){
                 p.reset();
             }
         });
     }
 
+    /** @return the work-stealing pool processes run on, shared with anything else that splits work across cores. Can be called from any thread. */
+    public synchronized ForkJoinPool pool(){
+        if(executor == null){
+            executor = new ForkJoinPool(Math.max(OS.cores, 1), pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("AsyncLogic-Thread-" + thread.getPoolIndex());
+                thread.setDaemon(true);
+                return thread;
+            }, (t, e) -> Threads.throwAppException(e), false);
+        }
+        return executor;
+    }
+
     public void begin(){
         if(state.isPlaying()){
             //sync begin
@@ -44,22 +68,16 @@ public class AsyncCore{
             }
 
             futures.clear();
+            tasks.clear();
+            tasks.setSize(processes.size);
 
-            //init executor with size of potentially-modified process list
-            if(executor == null){
-                executor = Executors.newFixedThreadPool(processes.size, r -> {
-                    Thread thread = new Thread(r, "AsyncLogic-Thread");
-                    thread.setDaemon(true);
-                    thread.setUncaughtExceptionHandler((t, e) -> Threads.throwAppException(e));
-                    return thread;
-                });
+            if(times.length != processes.size){
+                times = new long[processes.size];
             }
 
-            //submit all tasks
-            for(AsyncProcess p : processes){
-                if(p.shouldProcess()){
-                    futures.add(executor.submit(p::process));
-                }
+            //submit all tasks, each one after the processes it depends on
+            for(int i = 0; i < processes.size; i++){
+                schedule(i, 0);
             }
         }
     }
@@ -72,9 +90,79 @@ public class AsyncCore{
             for(AsyncProcess p : processes){
                 p.end();
             }
+
+            while(means.size < processes.size){
+                means.add(new WindowedMean(60));
+            }
+            for(int i = 0; i < processes.size; i++){
+                means.get(i).add(times[i] / 1_000_000f);
+            }
         }
     }
 
+    /** @return the time the process took in the last frame, in milliseconds. */
+    public float lastTime(AsyncProcess process){
+        int index = processes.indexOf(process, true);
+        return index == -1 || index >= times.length ? 0f : times[index] / 1_000_000f;
+    }
+
+    /** @return the time the process took, averaged over the last 60 frames, in milliseconds. */
+    public float averageTime(AsyncProcess process){
+        int index = processes.indexOf(process, true);
+        return index == -1 || index >= means.size ? 0f : means.get(index).mean();
+    }
+
+    private CompletableFuture<Void> schedule(int index, int depth){
+        if(depth > processes.size){
+            throw new IllegalStateException("Cyclic dependency between async processes.");
+        }
+
+        if(tasks.get(index) != null) return tasks.get(index);
+
+        AsyncProcess process = processes.get(index);
+        Seq<CompletableFuture<Void>> dependencies = new Seq<>();
+        for(int i = 0; i < processes.size; i++){
+            if(i != index && process.dependsOn(processes.get(i))){
+                dependencies.add(schedule(i, depth + 1));
+            }
+        }
+
+        CompletableFuture<Void> task;
+        if(process.shouldProcess()){
+            Runnable run = () -> run(process, index);
+            task = dependencies.isEmpty() ?
+                CompletableFuture.runAsync(run, pool()) :
+                CompletableFuture.allOf(dependencies.toArray(CompletableFuture.class)).thenRunAsync(run, pool());
+            futures.add(task);
+        }else{
+            //skipped processes still have to wait for what they depend on, so that their dependents do as well
+            times[index] = 0;
+            task = dependencies.isEmpty() ? CompletableFuture.completedFuture(null) : CompletableFuture.allOf(dependencies.toArray(CompletableFuture.class));
+        }
+
+        tasks.set(index, task);
+        return task;
+    }
+
+    private void run(AsyncProcess process, int index){
+        long start = Time.nanos();
+        int chunks = process.chunks();
+
+        if(chunks <= 1){
+            process.process(0);
+        }else{
+            //split into chunks; they are stolen by idle workers while this one works through its own
+            ForkJoinTask<?>[] subtasks = new ForkJoinTask[chunks];
+            for(int i = 0; i < chunks; i++){
+                int chunk = i;
+                subtasks[i] = ForkJoinTask.adapt(() -> process.process(chunk));
+            }
+            ForkJoinTask.invokeAll(subtasks);
+        }
+
+        times[index] = Time.timeSinceNanos(start);
+    }
+
     private void complete(){
         //wait for all threads to stop processing
         for(var future : futures){
@@ -14,6 +14,21 @@ public interface AsyncProcess{
     /** Async. Called in a separate thread. */
     default void process(){}
 
+    /** Async. Processes one of {@link #chunks()} parts of this frame's work; chunks may run concurrently. */
+    default void process(int chunk){
+        process();
+    }
+
+    /** @return how many parts {@link #process(int)} is split into this frame. */
+    default int chunks(){
+        return 1;
+    }
+
+    /** @return whether this process has to finish processing before the other one may start. */
+    default boolean dependsOn(AsyncProcess other){
+        return false;
+    }
+
     /** Sync. Called in the end of the main loop. */
     default void end(){}
 
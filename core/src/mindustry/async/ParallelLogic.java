@@ -0,0 +1,146 @@
+package mindustry.async;
+
+import arc.math.*;
+import arc.struct.*;
+import arc.util.*;
+import mindustry.logic.*;
+import mindustry.net.Administration.*;
+import mindustry.world.blocks.logic.LogicBlock.*;
+
+import java.util.concurrent.*;
+
+import static mindustry.Vars.*;
+
+/**
+ * Runs compiled processors in lockstep rounds after all buildings have updated.
+ * In each round, every queued processor first runs its side-effect free instructions concurrently (see {@link LProgram#runPure(LExecutor, int)}).
+ * Then each one runs on the main thread up to its next side-effect free instruction, in queue order. This repeats until every budget is spent,
+ * so anything that touches the world happens in the same order on every machine, regardless of thread scheduling.
+ * Programs translated by {@link LJit} are not used here, since they can't stop before instructions with side effects.
+ */
+public class ParallelLogic{
+    /** Below this amount of processors, spans are not split up any further. */
+    static final int grain = 16;
+
+    /** Whether processors should be queued instead of running in place. Refreshed every update. */
+    public boolean enabled;
+
+    private final Seq<LogicBuild> queue = new Seq<>(true, 64, LogicBuild.class);
+    private int[] budgets = new int[64];
+    /** Indices of processors that still have budget left, in queue order. */
+    private int[] pending = new int[64];
+    private final WindowedMean time = new WindowedMean(60);
+
+    /** Sync. Queues a processor to run its accumulated instructions in {@link #update()}. */
+    public void queue(LogicBuild build){
+        queue.add(build);
+    }
+
+    /** Sync. Runs all queued processors. */
+    public void update(){
+        int size = queue.size;
+        long start = Time.nanos();
+
+        if(size > 0){
+            LogicBuild[] builds = queue.items;
+            if(budgets.length < size){
+                budgets = new int[size];
+                pending = new int[size];
+            }
+            int[] budgets = this.budgets, pending = this.pending;
+            int count = 0;
+
+            for(int i = 0; i < size; i++){
+                budgets[i] = (int)builds[i].accumulator;
+                if(budgets[i] > 0) pending[count++] = i;
+            }
+
+            while(count > 0){
+                if(count <= grain){
+                    for(int j = 0; j < count; j++){
+                        runPure(builds, budgets, pending[j]);
+                    }
+                }else{
+                    asyncCore.pool().invoke(new Span(builds, budgets, pending, 0, count));
+                }
+
+                int next = 0;
+                for(int j = 0; j < count; j++){
+                    int i = pending[j];
+                    if(budgets[i] <= 0) continue;
+
+                    LogicBuild build = builds[i];
+                    LExecutor exec = build.executor;
+
+                    if(!build.isValid()){
+                        budgets[i] = 0;
+                        continue;
+                    }
+
+                    //processors reloaded in the meantime can't take part in spans, they just finish their budget
+                    int ran = exec.program == null ? exec.runBatch(budgets[i]) : exec.program.runSerial(exec, budgets[i]);
+                    build.accumulator -= ran;
+                    budgets[i] -= ran;
+
+                    if(exec.yield){
+                        exec.yield = false;
+                        budgets[i] = 0;
+                    }
+
+                    //everything left starts with a side-effect free instruction, so only these take part in the next round
+                    if(budgets[i] > 0) pending[next++] = i;
+                }
+                count = next;
+            }
+
+            queue.clear();
+        }
+
+        time.add(Time.timeSinceNanos(start) / 1_000_000f);
+        enabled = Config.parallelLogic.bool();
+    }
+
+    /** @return the time spent running queued processors, averaged over the last 60 updates, in milliseconds. */
+    public float averageTime(){
+        return time.mean();
+    }
+
+    public void reset(){
+        queue.clear();
+    }
+
+    static void runPure(LogicBuild[] builds, int[] budgets, int i){
+        LExecutor exec = builds[i].executor;
+        if(budgets[i] > 0 && exec.program != null){
+            int ran = exec.program.runPure(exec, budgets[i]);
+            builds[i].accumulator -= ran;
+            budgets[i] -= ran;
+        }
+    }
+
+    static class Span extends RecursiveAction{
+        final LogicBuild[] builds;
+        final int[] budgets, pending;
+        final int from, to;
+
+        Span(LogicBuild[] builds, int[] budgets, int[] pending, int from, int to){
+            this.builds = builds;
+            this.budgets = budgets;
+            this.pending = pending;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute(){
+            if(to - from <= grain){
+                for(int j = from; j < to; j++){
+                    runPure(builds, budgets, pending[j]);
+                }
+            }else{
+                int mid = (from + to) >>> 1;
+                invokeAll(new Span(builds, budgets, pending, from, mid), new Span(builds, budgets, pending, mid, to));
+            }
+        }
+    }
+}
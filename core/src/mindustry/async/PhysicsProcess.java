@@ -5,9 +5,12 @@ import arc.math.geom.*;
 import arc.math.geom.QuadTree.*;
 import arc.struct.*;
 import mindustry.*;
-import mindustry.async.PhysicsProcess.PhysicsWorld.*;
 import mindustry.entities.*;
 import mindustry.gen.*;
+import mindustry.net.Administration.*;
+
+import java.util.*;
+import java.util.concurrent.*;
 
 public class PhysicsProcess implements AsyncProcess{
     public static final int
@@ -17,7 +20,8 @@ public class PhysicsProcess implements AsyncProcess{
     layerFlying = 2;
 
     private PhysicsWorld physics;
-    private Seq<PhysicRef> refs = new Seq<>(false);
+    //entity of every body slot, null for free slots
+    private Physicsc[] entities = {};
     //currently only enabled for units
     private EntityGroup<Unit> group = Groups.unit;
 
@@ -26,42 +30,41 @@ public class PhysicsProcess implements AsyncProcess{
         if(physics == null) return;
         boolean local = !Vars.net.client();
 
+        //swap the broad phase if it was changed since the last frame
+        boolean grid = Config.physicsBroadphase.string().equals("grid");
+        if(grid != physics.broadphase instanceof GridBroadphase){
+            physics.broadphase = grid ? new GridBroadphase(physics.bounds) : new QuadTreeBroadphase(physics.bounds);
+        }
+
         //remove stale entities
-        refs.removeAll(ref -> {
-            if(!ref.entity.isAdded()){
-                physics.remove(ref.body);
-                ref.entity.physref(null);
-                return true;
+        for(int i = 0; i < physics.top; i++){
+            Physicsc entity = entities[i];
+            if(entity != null && !entity.isAdded()){
+                physics.remove(i);
+                entity.physref(-1);
+                entities[i] = null;
             }
-            return false;
-        });
+        }
 
         //find Units without bodies and assign them
         for(Unit entity : group){
             if(entity == null || entity.type == null || !entity.type.physics) continue;
 
-            if(entity.physref == null){
-                PhysicsBody body = new PhysicsBody();
-                body.x = entity.x;
-                body.y = entity.y;
-                body.mass = entity.mass();
-                body.radius = entity.hitSize / 2f;
-
-                PhysicRef ref = new PhysicRef(entity, body);
-                refs.add(ref);
-
-                entity.physref = ref;
-
-                physics.add(body);
+            int slot = entity.physref;
+            if(slot < 0 || slot >= physics.top || entities[slot] != entity){
+                slot = physics.add(entity.x, entity.y, entity.hitSize / 2f, entity.mass());
+                if(entities.length < physics.capacity()){
+                    entities = Arrays.copyOf(entities, physics.capacity());
+                }
+                entities[slot] = entity;
+                entity.physref = slot;
             }
 
             //save last position
-            PhysicRef ref = entity.physref;
-
-            ref.body.layer = entity.collisionLayer();
-            ref.x = entity.x;
-            ref.y = entity.y;
-            ref.body.local = local || entity.isLocal();
+            physics.layer[slot] = entity.collisionLayer();
+            physics.startX[slot] = entity.x;
+            physics.startY[slot] = entity.y;
+            physics.local[slot] = local || entity.isLocal();
         }
     }
 
@@ -69,12 +72,9 @@ public class PhysicsProcess implements AsyncProcess{
     public void process(){
         if(physics == null) return;
 
-        //get last position vectors before step
-        for(PhysicRef ref : refs){
-            //force set target position
-            ref.body.x = ref.x;
-            ref.body.y = ref.y;
-        }
+        //force set target position
+        System.arraycopy(physics.startX, 0, physics.x, 0, physics.top);
+        System.arraycopy(physics.startY, 0, physics.y, 0, physics.top);
 
         physics.update();
     }
@@ -83,19 +83,26 @@ public class PhysicsProcess implements AsyncProcess{
     public void end(){
         if(physics == null) return;
 
+        float[] x = physics.x, y = physics.y, startX = physics.startX, startY = physics.startY;
+
         //move entities
-        for(PhysicRef ref : refs){
-            Physicsc entity = ref.entity;
+        for(int i = 0; i < physics.top; i++){
+            Physicsc entity = entities[i];
 
             //move by delta
-            entity.move(ref.body.x - ref.x, ref.body.y - ref.y);
+            if(entity != null){
+                entity.move(x[i] - startX[i], y[i] - startY[i]);
+            }
         }
     }
 
     @Override
     public void reset(){
         if(physics != null){
-            refs.clear();
+            for(Physicsc entity : entities){
+                if(entity != null) entity.physref(-1);
+            }
+            entities = new Physicsc[0];
             physics = null;
         }
     }
@@ -107,105 +114,471 @@ public class PhysicsProcess implements AsyncProcess{
         physics = new PhysicsWorld(Vars.world.getQuadBounds(new Rect()));
     }
 
-    public static class PhysicRef{
-        public Physicsc entity;
-        public PhysicsBody body;
-        public float x, y;
-
-        public PhysicRef(Physicsc entity, PhysicsBody body){
-            this.entity = entity;
-            this.body = body;
-        }
-    }
-
-    //world for simulating physics in a different thread
+    /**
+     * World for simulating physics in a different thread.
+     * Bodies are stored as parallel arrays indexed by a slot, which stays the same for the lifetime of a body.
+     * Removed slots are reused by the next added bodies; slots at or above {@link #top} are never used.
+     */
     public static class PhysicsWorld{
         //how much to soften movement by
         private static final float scl = 1.25f;
-
-        private final QuadTree<PhysicsBody>[] trees = new QuadTree[layers];
-        private final Seq<PhysicsBody> bodies = new Seq<>(false, 16, PhysicsBody.class);
-        private final Seq<PhysicsBody> seq = new Seq<>(PhysicsBody.class);
+        /** Below this amount of bodies, islands are not split up any further. */
+        private static final int grain = 256;
+
+        public final Rect bounds;
+        /** Finds candidate collisions. May be replaced between updates. */
+        public Broadphase broadphase;
+
+        /** Current position of every body, moved by {@link #update()}. */
+        public float[] x = {}, y = {};
+        /** Position at the start of the step, set by the owner of the world. */
+        public float[] startX = {}, startY = {};
+        public float[] radius = {}, mass = {};
+        public int[] layer = {};
+        public boolean[] local = {}, used = {};
+        /** Set once a body has collided in the current step. Other bodies do not push it back. */
+        boolean[] collided = {};
+        /** Amount of slots that may be used. */
+        public int top;
+
+        private final IntSeq free = new IntSeq();
+        private final IntSeq seq = new IntSeq();
         private final Rect rect = new Rect();
-        private final Vec2 vec = new Vec2();
+
+        //candidates of every local body, as body indices; the ones of body i are at [candidateStart[i], candidateStart[i + 1])
+        private final IntSeq candidates = new IntSeq();
+        private int[] candidateStart = {};
+        //union-find parents and the island of every body
+        private int[] parent = {}, island = {};
+        //body indices sorted by island; island i is at [islandStart[i], islandStart[i + 1])
+        private int[] order = {}, islandStart = {};
 
         public PhysicsWorld(Rect bounds){
-            for(int i = 0; i < layers; i++){
-                trees[i] = new QuadTree<>(new Rect(bounds));
-            }
+            this.bounds = new Rect(bounds);
+            this.broadphase = new QuadTreeBroadphase(bounds);
         }
 
-        public void add(PhysicsBody body){
-            bodies.add(body);
+        /** @return the size of all body arrays. */
+        public int capacity(){
+            return x.length;
         }
 
-        public void remove(PhysicsBody body){
-            bodies.remove(body);
+        /** @return the slot of the new body. */
+        public int add(float x, float y, float radius, float mass){
+            int slot = free.isEmpty() ? top++ : free.pop();
+
+            if(slot >= capacity()){
+                int cap = Math.max(16, capacity() * 7 / 4);
+                this.x = Arrays.copyOf(this.x, cap);
+                this.y = Arrays.copyOf(this.y, cap);
+                startX = Arrays.copyOf(startX, cap);
+                startY = Arrays.copyOf(startY, cap);
+                this.radius = Arrays.copyOf(this.radius, cap);
+                this.mass = Arrays.copyOf(this.mass, cap);
+                layer = Arrays.copyOf(layer, cap);
+                local = Arrays.copyOf(local, cap);
+                used = Arrays.copyOf(used, cap);
+                collided = Arrays.copyOf(collided, cap);
+
+                parent = new int[cap];
+                island = new int[cap];
+                order = new int[cap];
+                islandStart = new int[cap + 1];
+                candidateStart = new int[cap + 1];
+                broadphase.invalidate();
+            }
+
+            this.x[slot] = startX[slot] = x;
+            this.y[slot] = startY[slot] = y;
+            this.radius[slot] = radius;
+            this.mass[slot] = mass;
+            layer[slot] = 0;
+            local[slot] = true;
+            used[slot] = true;
+            return slot;
         }
 
-        public void update(){
-            for(int i = 0; i < layers; i++){
-                trees[i].clear();
+        public void remove(int slot){
+            used[slot] = false;
+            broadphase.remove(slot);
+
+            if(slot == top - 1){
+                top--;
+            }else{
+                free.add(slot);
             }
+        }
+
+        public void hitbox(int slot, Rect out){
+            out.setCentered(x[slot], y[slot], radius[slot] * 2, radius[slot] * 2);
+        }
 
-            var bodyItems = bodies.items;
-            int bodySize = bodies.size;
+        /**
+         * Resolves overlapping bodies. Bodies are grouped into islands of transitively overlapping hitboxes, and each island only
+         * collides with itself, in slot order. Islands never share a body, so they are solved in parallel with the same result as in sequence.
+         */
+        public void update(){
+            int top = this.top;
+            boolean[] used = this.used, local = this.local;
 
-            for(int i = 0; i < bodySize; i++){
-                PhysicsBody body = bodyItems[i];
-                body.collided = false;
-                trees[body.layer].insert(body);
+            for(int i = 0; i < top; i++){
+                parent[i] = i;
             }
+            Arrays.fill(collided, 0, top, false);
 
-            for(int i = 0; i < bodySize; i++){
-                PhysicsBody body = bodyItems[i];
+            broadphase.update(this);
+            if(top == 0) return;
+
+            //collect candidates and join overlapping bodies into islands
+            candidates.clear();
+            for(int i = 0; i < top; i++){
+                candidateStart[i] = candidates.size;
 
                 //for clients, the only body that collides is the local one; all other physics simulations are handled by the server.
-                if(!body.local) continue;
+                if(!used[i] || !local[i]) continue;
 
-                body.hitbox(rect);
+                hitbox(i, rect);
 
                 seq.size = 0;
-                trees[body.layer].intersect(rect, seq);
+                broadphase.query(this, layer[i], rect, seq);
                 int size = seq.size;
-                var items = seq.items;
+                int[] items = seq.items;
 
                 for(int j = 0; j < size; j++){
-                    PhysicsBody other = items[j];
+                    int other = items[j];
+                    if(other == i) continue;
+
+                    candidates.add(other);
+                    union(i, other);
+                }
+            }
+            candidateStart[top] = candidates.size;
+
+            int islands = sortIslands(top);
+
+            Span span = new Span(this, 0, islands);
+            if(islands > 1 && top > grain){
+                if(ForkJoinTask.inForkJoinPool()){
+                    span.invoke();
+                }else{
+                    Vars.asyncCore.pool().invoke(span);
+                }
+            }else{
+                span.compute();
+            }
+        }
+
+        /** Groups body indices by island into {@link #order}, keeping them ascending within each island. @return the amount of islands. */
+        private int sortIslands(int bodySize){
+            int[] parent = this.parent, island = this.island, order = this.order, islandStart = this.islandStart;
+            int islands = 0;
+
+            //roots are the lowest index of their island, so they are always numbered before the rest of it
+            for(int i = 0; i < bodySize; i++){
+                int root = find(i);
+                island[i] = root == i ? islands++ : island[root];
+            }
+
+            Arrays.fill(islandStart, 0, islands + 1, 0);
+            for(int i = 0; i < bodySize; i++){
+                islandStart[island[i] + 1]++;
+            }
+            for(int i = 0; i < islands; i++){
+                islandStart[i + 1] += islandStart[i];
+            }
 
-                    if(other == body || other.collided) continue;
+            //parents are no longer needed, reuse them as insertion cursors
+            System.arraycopy(islandStart, 0, parent, 0, islands);
+            for(int i = 0; i < bodySize; i++){
+                order[parent[island[i]]++] = i;
+            }
 
-                    float rs = body.radius + other.radius;
-                    float dst = Mathf.dst(body.x, body.y, other.x, other.y);
+            return islands;
+        }
+
+        private int find(int i){
+            int[] parent = this.parent;
+            while(parent[i] != i){
+                //path halving
+                parent[i] = parent[parent[i]];
+                i = parent[i];
+            }
+            return i;
+        }
+
+        private void union(int a, int b){
+            a = find(a);
+            b = find(b);
+            //the lower index is always the root, so that island numbering does not depend on pair order
+            if(a < b){
+                parent[b] = a;
+            }else if(b < a){
+                parent[a] = b;
+            }
+        }
+
+        private void solve(int island){
+            int[] order = this.order, candidateStart = this.candidateStart, candidates = this.candidates.items;
+            float[] x = this.x, y = this.y, radius = this.radius, mass = this.mass;
+            boolean[] used = this.used, local = this.local, collided = this.collided;
+
+            for(int k = islandStart[island], end = islandStart[island + 1]; k < end; k++){
+                int i = order[k];
+
+                if(!used[i] || !local[i]) continue;
+
+                for(int j = candidateStart[i], cend = candidateStart[i + 1]; j < cend; j++){
+                    int other = candidates[j];
+
+                    if(collided[other]) continue;
+
+                    float rs = radius[i] + radius[other];
+                    float dx = x[i] - x[other], dy = y[i] - y[other];
+                    float len2 = dx * dx + dy * dy;
+                    float dst = (float)Math.sqrt(len2);
 
                     if(dst < rs){
-                        vec.set(body.x - other.x, body.y - other.y).setLength(rs - dst);
-                        float ms = body.mass + other.mass;
-                        float m1 = other.mass / ms, m2 = body.mass / ms;
+                        //same as Vec2#setLength, without sharing a vector between threads
+                        if(len2 != 0f){
+                            float length = rs - dst, s = (float)Math.sqrt(length * length / len2);
+                            dx *= s;
+                            dy *= s;
+                        }
+
+                        float ms = mass[i] + mass[other];
+                        float m1 = mass[other] / ms, m2 = mass[i] / ms;
 
                         //first body is always local due to guard check above
-                        body.x += vec.x * m1 / scl;
-                        body.y += vec.y * m1 / scl;
+                        x[i] += dx * m1 / scl;
+                        y[i] += dy * m1 / scl;
 
-                        if(other.local){
-                            other.x -= vec.x * m2 / scl;
-                            other.y -= vec.y * m2 / scl;
+                        if(local[other]){
+                            x[other] -= dx * m2 / scl;
+                            y[other] -= dy * m2 / scl;
                         }
                     }
                 }
-                body.collided = true;
+                collided[i] = true;
             }
         }
 
-        public static class PhysicsBody implements QuadTreeObject{
-            public float x, y, radius, mass;
-            public int layer = 0;
-            public boolean collided = false, local = true;
+        static class Span extends RecursiveAction{
+            final PhysicsWorld world;
+            final int from, to;
+
+            Span(PhysicsWorld world, int from, int to){
+                this.world = world;
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute(){
+                int[] islandStart = world.islandStart;
+                if(to - from <= 1 || islandStart[to] - islandStart[from] <= grain){
+                    for(int i = from; i < to; i++){
+                        world.solve(i);
+                    }
+                }else{
+                    int mid = (from + to) >>> 1;
+                    invokeAll(new Span(world, from, mid), new Span(world, mid, to));
+                }
+            }
+        }
+    }
+
+    /** Finds the bodies a body may collide with. Only used from the physics thread, apart from {@link #remove(int)}. */
+    public interface Broadphase{
+        /** Called before every solver step. */
+        void update(PhysicsWorld world);
+
+        /** Adds the slots of all bodies on the layer whose hitbox overlaps the rectangle to the output. */
+        void query(PhysicsWorld world, int layer, Rect rect, IntSeq out);
+
+        /** Called when a body is removed, before its slot is reused. */
+        default void remove(int slot){}
+
+        /** Called when the body arrays of the world are reallocated. */
+        default void invalidate(){}
+    }
+
+    /** Rebuilds one quadtree per layer every step. */
+    public static class QuadTreeBroadphase implements Broadphase{
+        private final QuadTree<Proxy>[] trees = new QuadTree[layers];
+        private final Seq<Proxy> seq = new Seq<>(Proxy.class);
+        //one per slot, reused by the bodies that take it over
+        private Proxy[] proxies = {};
+
+        public QuadTreeBroadphase(Rect bounds){
+            for(int i = 0; i < layers; i++){
+                trees[i] = new QuadTree<>(new Rect(bounds));
+            }
+        }
+
+        @Override
+        public void update(PhysicsWorld world){
+            for(int i = 0; i < layers; i++){
+                trees[i].clear();
+            }
+
+            if(proxies.length < world.top){
+                int last = proxies.length;
+                proxies = Arrays.copyOf(proxies, world.capacity());
+                for(int i = last; i < proxies.length; i++){
+                    proxies[i] = new Proxy(world, i);
+                }
+            }
+
+            for(int i = 0; i < world.top; i++){
+                if(world.used[i]){
+                    trees[world.layer[i]].insert(proxies[i]);
+                }
+            }
+        }
+
+        @Override
+        public void query(PhysicsWorld world, int layer, Rect rect, IntSeq out){
+            seq.size = 0;
+            trees[layer].intersect(rect, seq);
+            for(int i = 0; i < seq.size; i++){
+                out.add(seq.items[i].slot);
+            }
+        }
+
+        static class Proxy implements QuadTreeObject{
+            final PhysicsWorld world;
+            final int slot;
+
+            Proxy(PhysicsWorld world, int slot){
+                this.world = world;
+                this.slot = slot;
+            }
 
             @Override
             public void hitbox(Rect out){
-                out.setCentered(x, y, radius * 2, radius * 2);
+                world.hitbox(slot, out);
+            }
+        }
+    }
+
+    /**
+     * Uniform grid with one linked list of body slots per cell and layer.
+     * Bodies are filed by their center, so queries are widened by the largest radius.
+     * Only bodies that left their cell since the last step are relinked.
+     */
+    public static class GridBroadphase implements Broadphase{
+        public static final float cellSize = 32f;
+
+        private final float originX, originY;
+        private final int cols, rows;
+        //first body slot of each cell, -1 if empty
+        private final int[] heads;
+
+        //per slot; -1 for slots that are not linked
+        private int[] cells = {}, next = {}, prev = {};
+
+        private float maxRadius;
+        private boolean dirty = true;
+        private final Rect hitbox = new Rect();
+
+        public GridBroadphase(Rect bounds){
+            originX = bounds.x;
+            originY = bounds.y;
+            cols = Math.max((int)Math.ceil(bounds.width / cellSize), 1);
+            rows = Math.max((int)Math.ceil(bounds.height / cellSize), 1);
+            heads = new int[cols * rows * layers];
+        }
+
+        @Override
+        public void invalidate(){
+            dirty = true;
+        }
+
+        @Override
+        public void remove(int slot){
+            if(!dirty && slot < cells.length && cells[slot] != -1){
+                unlink(slot);
+                cells[slot] = -1;
+            }
+        }
+
+        @Override
+        public void update(PhysicsWorld world){
+            int top = world.top;
+            float[] x = world.x, y = world.y, radius = world.radius;
+            int[] layer = world.layer;
+            boolean[] used = world.used;
+
+            if(dirty){
+                int cap = world.capacity();
+                cells = new int[cap];
+                next = new int[cap];
+                prev = new int[cap];
+                Arrays.fill(cells, -1);
+                Arrays.fill(heads, -1);
+                dirty = false;
+            }
+
+            float max = 0f;
+            for(int i = 0; i < top; i++){
+                if(!used[i]) continue;
+
+                max = Math.max(max, radius[i]);
+                int cell = layer[i] * cols * rows + cy(y[i]) * cols + cx(x[i]);
+
+                //bodies that stayed in their cell are left alone
+                if(cell != cells[i]){
+                    if(cells[i] != -1) unlink(i);
+                    link(i, cell);
+                }
+            }
+            maxRadius = max;
+        }
+
+        @Override
+        public void query(PhysicsWorld world, int layer, Rect rect, IntSeq out){
+            int
+            minx = cx(rect.x - maxRadius), maxx = cx(rect.x + rect.width + maxRadius),
+            miny = cy(rect.y - maxRadius), maxy = cy(rect.y + rect.height + maxRadius),
+            offset = layer * cols * rows;
+
+            for(int y = miny; y <= maxy; y++){
+                for(int x = minx; x <= maxx; x++){
+                    for(int i = heads[offset + y * cols + x]; i != -1; i = next[i]){
+                        world.hitbox(i, hitbox);
+                        if(hitbox.overlaps(rect)){
+                            out.add(i);
+                        }
+                    }
+                }
+            }
+        }
+
+        int cx(float x){
+            return Mathf.clamp((int)((x - originX) / cellSize), 0, cols - 1);
+        }
+
+        int cy(float y){
+            return Mathf.clamp((int)((y - originY) / cellSize), 0, rows - 1);
+        }
+
+        void link(int slot, int cell){
+            int head = heads[cell];
+            next[slot] = head;
+            prev[slot] = -1;
+            if(head != -1) prev[head] = slot;
+            heads[cell] = slot;
+            cells[slot] = cell;
+        }
+
+        void unlink(int slot){
+            int p = prev[slot], n = next[slot];
+            if(p != -1){
+                next[p] = n;
+            }else{
+                heads[cells[slot]] = n;
             }
+            if(n != -1) prev[n] = p;
         }
     }
 }
@@ -1886,6 +1886,7 @@ public class Blocks{
             displayedSpeed = 4.2f;
             buildCostMultiplier = 2f;
             researchCost = with(Items.copper, 5);
+            parallelUpdate = true;
         }};
 
         titaniumConveyor = new Conveyor("titanium-conveyor"){{
@@ -1893,6 +1894,7 @@ public class Blocks{
             health = 65;
             speed = 0.08f;
             displayedSpeed = 11f;
+            parallelUpdate = true;
         }};
 
         plastaniumConveyor = new StackConveyor("plastanium-conveyor"){{
@@ -1907,6 +1909,7 @@ public class Blocks{
             health = 180;
             speed = 0.08f;
             displayedSpeed = 11f;
+            parallelUpdate = true;
         }};
 
         junction = new Junction("junction"){{
@@ -485,7 +485,11 @@ public class Logic implements ApplicationListener{
                 state.envAttrs.add(state.rules.attributes);
                 Groups.weather.each(w -> state.envAttrs.add(w.weather.attrs, w.opacity));
 
+                parallelUpdater.update();
+                buildingSleeper.update();
                 Groups.update();
+
+                asyncCore.logic.update();
             }
 
             if(runStateCheck){
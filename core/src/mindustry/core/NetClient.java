@@ -55,6 +55,11 @@ public class NetClient implements ApplicationListener{
     /** Byte stream for reading in snapshots. */
     private ReusableByteInStream byteStream = new ReusableByteInStream();
     private DataInputStream dataStream = new DataInputStream(byteStream);
+    /** Last state of each entity received in delta snapshots. */
+    private EntityBaseline baseline = new EntityBaseline();
+    /** Stream for reading single entities of delta snapshots. */
+    private ReusableByteInStream recordStream = new ReusableByteInStream();
+    private Reads recordReads = new Reads(new DataInputStream(recordStream));
     /** Packet handlers for custom types of messages. */
     private ObjectMap<String, Seq<Cons<String>>> customPacketHandlers = new ObjectMap<>();
 
@@ -363,6 +368,7 @@ public class NetClient implements ApplicationListener{
     public static void worldDataBegin(){
         Groups.clear();
         netClient.removed.clear();
+        netClient.baseline.clear();
         logic.reset();
         netClient.connecting = true;
 
@@ -402,6 +408,10 @@ public class NetClient implements ApplicationListener{
         int id = input.readInt();
         byte typeID = input.readByte();
 
+        readSyncEntity(id, typeID, read);
+    }
+
+    static void readSyncEntity(int id, byte typeID, Reads read){
         Syncc entity = Groups.sync.getByID(id);
         boolean add = false, created = false;
 
@@ -449,10 +459,56 @@ public class NetClient implements ApplicationListener{
         }
     }
 
+    /** Reads entities that changed since the last delta snapshot. Reliable, so that the baseline of both sides stays the same. */
+    @Remote(variants = Variant.one)
+    public static void entitySnapshotDelta(short amount, byte[] data){
+        try{
+            netClient.byteStream.setBytes(data);
+            DataInputStream input = netClient.dataStream;
+            EntityBaseline baseline = netClient.baseline;
+
+            for(int j = 0; j < amount; j++){
+                int id = input.readInt();
+                byte typeID = input.readByte();
+                boolean xor = input.readBoolean();
+                int length = EntityBaseline.readLength(input);
+
+                byte[] record = baseline.get(id);
+
+                if(xor){
+                    //the previous state is missing, which should not happen; skip it until it is sent in full
+                    if(record == null || record.length != length){
+                        input.skipBytes(length);
+                        continue;
+                    }
+
+                    for(int i = 0; i < length; i++){
+                        record[i] ^= input.readByte();
+                    }
+                }else{
+                    record = baseline.obtain(id, length);
+                    input.readFully(record);
+                }
+
+                netClient.recordStream.setBytes(record);
+                readSyncEntity(id, typeID, netClient.recordReads);
+            }
+
+            //records of removed entities are cleaned up once they make up half of the baseline
+            if(baseline.size() > Groups.sync.size() * 2 + 64){
+                baseline.prune();
+            }
+        }catch(Exception e){
+            Log.err("Error reading entity delta snapshot", e);
+        }
+    }
+
     @Remote(variants = Variant.one, priority = PacketPriority.low, unreliable = true)
     public static void hiddenSnapshot(IntSeq ids){
         for(int i = 0; i < ids.size; i++){
             int id = ids.items[i];
+            //hidden entities are sent in full once they are visible again
+            netClient.baseline.remove(id);
             var entity = Groups.sync.getByID(id);
             if(entity != null){
                 entity.handleSyncHidden();
@@ -576,6 +632,7 @@ public class NetClient implements ApplicationListener{
     private void reset(){
         net.setClientLoaded(false);
         removed.clear();
+        baseline.clear();
         timeoutTime = 0f;
         connecting = true;
         quietReset = false;
@@ -18,15 +18,18 @@ import mindustry.game.EventType.*;
 import mindustry.game.Teams.*;
 import mindustry.gen.*;
 import mindustry.graphics.*;
+import mindustry.io.*;
 import mindustry.logic.*;
 import mindustry.net.*;
 import mindustry.net.Administration.*;
+import mindustry.net.ArcNetProvider.*;
 import mindustry.net.Packets.*;
 import mindustry.world.*;
 
 import java.io.*;
 import java.net.*;
 import java.nio.*;
+import java.util.concurrent.*;
 import java.util.zip.*;
 
 import static arc.util.Log.*;
@@ -108,6 +111,9 @@ public class NetServer implements ApplicationListener{
     /** Cooldown between votes in seconds. */
     public static int voteCooldown = 60 * 5;
 
+    /** Compresses world data of joining players, see {@link Config#parallelWorldData}. */
+    private final ExecutorService worldDataExecutor = Threads.executor("World Data", 1);
+
     private ReusableByteOutStream writeBuffer = new ReusableByteOutStream(127);
     private Writes outputBuffer = new Writes(new DataOutputStream(writeBuffer));
 
@@ -115,6 +121,33 @@ public class NetServer implements ApplicationListener{
     private ReusableByteOutStream syncStream = new ReusableByteOutStream();
     /** Data stream for writing player sync data to. */
     private DataOutputStream dataStream = new DataOutputStream(syncStream);
+    /** Serializes packets that are sent to several players. */
+    private PacketSerializer serializer = new PacketSerializer();
+    /** Synced entities of the current snapshot, serialized once into {@link #recordStream}. */
+    private Seq<Syncc> snapshotEntities = new Seq<>(Syncc.class);
+    /** Start of each entity in {@link #recordStream}, followed by the end of the last one. */
+    private IntSeq recordOffsets = new IntSeq();
+    private ReusableByteOutStream recordStream = new ReusableByteOutStream();
+    private Writes recordWrites = new Writes(new DataOutputStream(recordStream));
+    /** Indices of entities in {@link #snapshotEntities} hidden from the team currently written. */
+    private Bits hiddenEntities = new Bits();
+    private Bits snapshotTeams = new Bits(Team.all.length);
+    private Seq<Player> snapshotPlayers = new Seq<>(Player.class), teamPlayers = new Seq<>(Player.class);
+    private Seq<SerializedPacket> sharedChunks = new Seq<>(SerializedPacket.class), teamChunks = new Seq<>(SerializedPacket.class);
+    private long lastSnapshot;
+    /** Amount of snapshot updates so far, used to send units outside of a player's view at a lower rate. */
+    private int snapshotCount;
+    /** Maps entity ID to its index in {@link #snapshotEntities}. */
+    private IntIntMap recordIndices = new IntIntMap();
+    /** Indices of entities that are not units, which are always of interest. */
+    private Bits nonUnitEntities = new Bits();
+    /** Indices of entities in the area of interest of the player currently written; only used when {@link #filterInterest} is set. */
+    private Bits interestEntities = new Bits();
+    private boolean filterInterest;
+    private Cons<Unit> addInterest = unit -> {
+        int index = recordIndices.get(unit.id, -1);
+        if(index != -1) interestEntities.set(index);
+    };
     /** Packet handlers for custom types of messages. */
     private ObjectMap<String, Seq<Cons2<Player, String>>> customPacketHandlers = new ObjectMap<>();
     /** Packet handlers for logic client data */
@@ -499,16 +532,59 @@ public class NetServer implements ApplicationListener{
     }
 
     public void sendWorldData(Player player){
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        if(Config.parallelWorldData.bool()){
+            sendWorldDataAsync(player);
+            return;
+        }
+
+        ReusableByteOutStream stream = new ReusableByteOutStream();
         DeflaterOutputStream def = new FastDeflaterOutputStream(stream);
         NetworkIO.writeWorld(player, def);
+        //the client starts over with new entities
+        player.con.baseline.clear();
         WorldStream data = new WorldStream();
-        data.stream = new ByteArrayInputStream(stream.toByteArray());
+        //read straight from the written bytes instead of copying them
+        data.stream = new ByteArrayInputStream(stream.getBytes(), 0, stream.size());
         player.con.sendStream(data);
 
         debug("Packed @ bytes of world data.", stream.size());
     }
 
+    /**
+     * Only writes the world uncompressed on the main thread, and compresses it in parallel in the background.
+     * Packets sent to the player in the meantime are queued by the client until it has loaded the world, so it stays consistent.
+     */
+    private void sendWorldDataAsync(Player player){
+        NetConnection con = player.con;
+        ReusableByteOutStream raw = new ReusableByteOutStream();
+        NetworkIO.writeWorld(player, raw);
+        con.baseline.clear();
+
+        worldDataExecutor.submit(() -> {
+            ReusableByteOutStream stream = new ReusableByteOutStream(raw.size() / 4);
+            try{
+                ParallelDeflate.write(raw.getBytes(), 0, raw.size(), stream);
+            }catch(Throwable e){
+                Core.app.post(() -> {
+                    err("Failed to compress world data for @", player.plainName());
+                    err(e);
+                    con.kick("Failed to send world data.");
+                });
+                return;
+            }
+
+            Core.app.post(() -> {
+                if(con.kicked || con.hasDisconnected) return;
+
+                WorldStream data = new WorldStream();
+                data.stream = new ByteArrayInputStream(stream.getBytes(), 0, stream.size());
+                con.sendStream(data);
+
+                debug("Packed @ bytes of world data in the background.", stream.size());
+            });
+        });
+    }
+
     public void addPacketHandler(String type, Cons2<Player, String> handler){
         customPacketHandlers.get(type, Seq::new).add(handler);
     }
@@ -929,8 +1005,133 @@ public class NetServer implements ApplicationListener{
         }
     }
 
+    /** Sends an entity snapshot to a single player. */
     public void writeEntitySnapshot(Player player) throws IOException{
-        byte tps = (byte)Math.min(Core.graphics.getFramesPerSecond(), 255);
+        snapshotPlayers.clear();
+        snapshotPlayers.add(player);
+        writeEntitySnapshots(snapshotPlayers);
+    }
+
+    /**
+     * Sends entity snapshots to several players. Entities are serialized once, and packets that several players
+     * get are serialized and compressed once, then sent to each of them.
+     */
+    public void writeEntitySnapshots(Seq<Player> players) throws IOException{
+        if(players.isEmpty()) return;
+
+        SerializedPacket statePacket = serializer.serialize(stateSnapshot());
+        for(Player player : players){
+            player.con.send(statePacket, false);
+        }
+        statePacket.release();
+
+        writeRecords();
+
+        //units outside the view of players are only sent every few snapshots, if at all
+        int farInterval = Config.interestFarInterval.num();
+        filterInterest = Config.interestManagement.bool() && (farInterval <= 0 || snapshotCount % farInterval != 0);
+        snapshotCount++;
+
+        boolean delta = Config.deltaSnapshots.bool(), sharedWritten = false;
+        releaseChunks(sharedChunks);
+        snapshotTeams.clear();
+
+        for(Player first : players){
+            if(snapshotTeams.get(first.team().id)) continue;
+            snapshotTeams.set(first.team().id);
+
+            teamPlayers.clear();
+            for(Player player : players){
+                if(player.team() == first.team()) teamPlayers.add(player);
+            }
+
+            //entities are only hidden by the fog of the player's team, so this is the same for every player of the team
+            hiddenEntities.clear();
+            hiddenIds.clear();
+            for(int i = 0; i < snapshotEntities.size; i++){
+                Syncc entity = snapshotEntities.items[i];
+                if(entity.isSyncHidden(first)){
+                    hiddenEntities.set(i);
+                    hiddenIds.add(entity.id());
+                }
+            }
+
+            if(delta){
+                for(Player player : teamPlayers){
+                    if(filterInterest) findInterest(player);
+                    writeEntityDelta(player);
+                }
+            }else if(filterInterest){
+                //every player sees a different area, so nothing is shared
+                for(Player player : teamPlayers){
+                    findInterest(player);
+                    releaseChunks(teamChunks);
+                    writeEntityChunks(teamChunks, true);
+
+                    if(player.con.baseline.size() > 0){
+                        player.con.baseline.clear();
+                    }
+
+                    for(SerializedPacket chunk : teamChunks){
+                        player.con.send(chunk, false);
+                    }
+                }
+            }else{
+                Seq<SerializedPacket> chunks;
+
+                //without fog, every team gets the same packets
+                if(hiddenIds.size == 0){
+                    if(!sharedWritten){
+                        writeEntityChunks(sharedChunks, false);
+                        sharedWritten = true;
+                    }
+                    chunks = sharedChunks;
+                }else{
+                    releaseChunks(teamChunks);
+                    writeEntityChunks(teamChunks, true);
+                    chunks = teamChunks;
+                }
+
+                for(Player player : teamPlayers){
+                    //the client moves on from any state sent before
+                    if(player.con.baseline.size() > 0){
+                        player.con.baseline.clear();
+                    }
+
+                    for(SerializedPacket chunk : chunks){
+                        player.con.send(chunk, false);
+                    }
+                }
+            }
+
+            if(hiddenIds.size > 0){
+                var hidden = new HiddenSnapshotCallPacket();
+                hidden.ids = hiddenIds;
+                SerializedPacket hiddenPacket = serializer.serialize(hidden);
+
+                for(Player player : teamPlayers){
+                    player.con.send(hiddenPacket, false);
+                }
+                hiddenPacket.release();
+            }
+
+            for(Player player : teamPlayers){
+                player.con.snapshotsSent++;
+            }
+        }
+
+        releaseChunks(sharedChunks);
+        releaseChunks(teamChunks);
+    }
+
+    private void releaseChunks(Seq<SerializedPacket> chunks){
+        for(SerializedPacket chunk : chunks){
+            chunk.release();
+        }
+        chunks.clear();
+    }
+
+    private StateSnapshotCallPacket stateSnapshot() throws IOException{
         syncStream.reset();
         int activeTeams = (byte)state.teams.present.count(t -> t.cores.size > 0);
 
@@ -945,50 +1146,166 @@ public class NetServer implements ApplicationListener{
             }
         }
 
-        dataStream.close();
+        //basic state data
+        var packet = new StateSnapshotCallPacket();
+        packet.waveTime = state.wavetime;
+        packet.wave = state.wave;
+        packet.enemies = state.enemies;
+        packet.paused = state.isPaused();
+        packet.gameOver = state.gameOver;
+        packet.timeData = universe.seconds();
+        packet.tps = (byte)Math.min(Core.graphics.getFramesPerSecond(), 255);
+        packet.rand0 = GlobalVars.rand.seed0;
+        packet.rand1 = GlobalVars.rand.seed1;
+        packet.coreData = syncStream.toByteArray();
+        return packet;
+    }
 
-        //write basic state data.
-        Call.stateSnapshot(player.con, state.wavetime, state.wave, state.enemies, state.isPaused(), state.gameOver,
-        universe.seconds(), tps, GlobalVars.rand.seed0, GlobalVars.rand.seed1, syncStream.toByteArray());
+    /** Serializes every synced entity once, for all snapshots sent in this update. */
+    private void writeRecords(){
+        snapshotEntities.clear();
+        recordOffsets.clear();
+        recordStream.reset();
+        recordIndices.clear();
+        nonUnitEntities.clear();
 
-        syncStream.reset();
+        for(Syncc entity : Groups.sync){
+            recordIndices.put(entity.id(), snapshotEntities.size);
+            if(!(entity instanceof Unit)) nonUnitEntities.set(snapshotEntities.size);
+            snapshotEntities.add(entity);
+            recordOffsets.add(recordStream.size());
+            entity.writeSync(recordWrites);
+        }
+
+        recordOffsets.add(recordStream.size());
+    }
+
+    /** Finds the entities a player is interested in: units around their view, their own unit, and everything that is not a unit. */
+    private void findInterest(Player player){
+        interestEntities.clear();
+        interestEntities.or(nonUnitEntities);
+
+        var con = player.con;
+        float margin = Config.interestMargin.num() * tilesize;
+        float width = con.viewWidth + margin * 2f, height = con.viewHeight + margin * 2f;
 
-        hiddenIds.clear();
+        for(TeamData data : state.teams.present){
+            data.tree().intersect(con.viewX - width / 2f, con.viewY - height / 2f, width, height, addInterest);
+        }
+
+        if(!player.dead()){
+            addInterest.get(player.unit());
+        }
+    }
+
+    /** @return whether an entity is left out of the snapshot currently written, either because it is hidden or not of interest. */
+    private boolean excluded(int index){
+        return hiddenEntities.get(index) || (filterInterest && !interestEntities.get(index));
+    }
+
+    /** Splits serialized entities into snapshot packets. */
+    private void writeEntityChunks(Seq<SerializedPacket> out, boolean filter) throws IOException{
+        byte[] records = recordStream.getBytes();
+        int[] offsets = recordOffsets.items;
         int sent = 0;
 
-        for(Syncc entity : Groups.sync){
-            //TODO write to special list
-            if(entity.isSyncHidden(player)){
-                hiddenIds.add(entity.id());
-                continue;
-            }
+        syncStream.reset();
+
+        for(int i = 0; i < snapshotEntities.size; i++){
+            if(filter && excluded(i)) continue;
+
+            Syncc entity = snapshotEntities.items[i];
 
-            //write all entities now
             dataStream.writeInt(entity.id()); //write id
             dataStream.writeByte(entity.classId() & 0xFF); //write type ID
-            entity.writeSync(Writes.get(dataStream)); //write entity
+            dataStream.write(records, offsets[i], offsets[i + 1] - offsets[i]); //write entity
 
             sent++;
 
             if(syncStream.size() > maxSnapshotSize){
-                dataStream.close();
-                Call.entitySnapshot(player.con, (short)sent, syncStream.toByteArray());
+                out.add(entityChunk(sent));
                 sent = 0;
                 syncStream.reset();
             }
         }
 
         if(sent > 0){
-            dataStream.close();
+            out.add(entityChunk(sent));
+        }
+    }
+
+    private SerializedPacket entityChunk(int amount){
+        var packet = new EntitySnapshotCallPacket();
+        packet.amount = (short)amount;
+        packet.data = syncStream.toByteArray();
+        return serializer.serialize(packet);
+    }
+
+    /**
+     * Writes the entities that changed since the last snapshot sent to a player, XORed with their previous state.
+     * These are sent reliably, so what was last sent is what the client has.
+     */
+    private void writeEntityDelta(Player player) throws IOException{
+        EntityBaseline baseline = player.con.baseline;
+        byte[] records = recordStream.getBytes();
+        int[] offsets = recordOffsets.items;
+        int sent = 0;
 
-            Call.entitySnapshot(player.con, (short)sent, syncStream.toByteArray());
+        syncStream.reset();
+
+        for(int i = 0; i < snapshotEntities.size; i++){
+            Syncc entity = snapshotEntities.items[i];
+            int id = entity.id();
+
+            if(hiddenEntities.get(i)){
+                //hidden units are removed on the client, so they need to be sent in full again
+                baseline.remove(id);
+                continue;
+            }
+
+            //not sent this time, so the client keeps the last state
+            if(filterInterest && !interestEntities.get(i)) continue;
+
+            int offset = offsets[i], length = offsets[i + 1] - offset;
+
+            //unchanged, nothing to send
+            if(baseline.matches(id, records, offset, length)) continue;
+
+            byte[] previous = baseline.get(id);
+            boolean xor = previous != null && previous.length == length;
+
+            dataStream.writeInt(id);
+            dataStream.writeByte(entity.classId() & 0xFF);
+            dataStream.writeBoolean(xor);
+            EntityBaseline.writeLength(dataStream, length);
+
+            if(xor){
+                for(int j = 0; j < length; j++){
+                    dataStream.writeByte(records[offset + j] ^ previous[j]);
+                }
+            }else{
+                dataStream.write(records, offset, length);
+            }
+
+            System.arraycopy(records, offset, baseline.obtain(id, length), 0, length);
+
+            sent++;
+
+            if(syncStream.size() > maxSnapshotSize){
+                Call.entitySnapshotDelta(player.con, (short)sent, syncStream.toByteArray());
+                sent = 0;
+                syncStream.reset();
+            }
         }
 
-        if(hiddenIds.size > 0){
-            Call.hiddenSnapshot(player.con, hiddenIds);
+        if(sent > 0){
+            Call.entitySnapshotDelta(player.con, (short)sent, syncStream.toByteArray());
         }
 
-        player.con.snapshotsSent++;
+        //records of removed entities are cleaned up once they make up half of the baseline
+        if(baseline.size() > Groups.sync.size() * 2 + 64){
+            baseline.prune();
+        }
     }
 
     public String fixName(String name){
@@ -1042,7 +1359,11 @@ public class NetServer implements ApplicationListener{
 
     void sync(){
         try{
-            int interval = Config.snapshotInterval.num();
+            //all players get their snapshot in the same update, so that they can share it
+            boolean snapshot = Time.timeSinceMillis(lastSnapshot) >= Config.snapshotInterval.num();
+            if(snapshot) lastSnapshot = Time.millis();
+
+            snapshotPlayers.clear();
             Groups.player.each(p -> !p.isLocal(), player -> {
                 if(player.con == null || !player.con.isConnected()){
                     onDisconnect(player, "disappeared");
@@ -1051,17 +1372,18 @@ public class NetServer implements ApplicationListener{
 
                 var connection = player.con;
 
-                if(Time.timeSinceMillis(connection.syncTime) < interval || !connection.hasConnected) return;
+                if(!snapshot || !connection.hasConnected) return;
 
                 connection.syncTime = Time.millis();
-
-                try{
-                    writeEntitySnapshot(player);
-                }catch(IOException e){
-                    e.printStackTrace();
-                }
+                snapshotPlayers.add(player);
             });
 
+            try{
+                writeEntitySnapshots(snapshotPlayers);
+            }catch(IOException e){
+                e.printStackTrace();
+            }
+
             if(Groups.player.size() > 0 && Core.settings.getBool("blocksync") && timer.get(timerBlockSync, blockSyncTime)){
                 writeBlockSnapshots();
             }
@@ -0,0 +1,77 @@
+package mindustry.entities;
+
+import arc.*;
+import arc.struct.*;
+import arc.util.*;
+import mindustry.game.EventType.*;
+import mindustry.gen.*;
+
+/**
+ * Wakes up sleeping buildings, which are taken out of their groups so that the update loop skips them, see {@link Building#sleep()}.
+ * Every sleeping building is woken up for an update after {@link #maxSleepTime} at the latest, so that changes without a wake-up call, like power or fog, are noticed eventually.
+ * Buildings that fall asleep or wake up while chunks are updated in parallel are moved out of or into their groups afterwards, as groups are not thread-safe.
+ */
+public class BuildingSleeper{
+    /** Maximum time a building sleeps for, in ticks. */
+    public float maxSleepTime = 60f * 10f;
+
+    /** Buildings by the time they fell asleep, oldest first. Buildings that woke up in the meantime are not removed. */
+    private final Seq<Building> sleeping = new Seq<>(false, 16, Building.class);
+    private final FloatSeq sleepTimes = new FloatSeq();
+    private int head;
+    /** Buildings whose sleep state changed during the parallel phase. */
+    private final Seq<Building> changed = new Seq<>(false, 16, Building.class);
+
+    public BuildingSleeper(){
+        Events.on(ResetEvent.class, e -> clear());
+        Events.on(WorldLoadEvent.class, e -> clear());
+    }
+
+    /** Schedules the timed wakeup of a building that just fell asleep. */
+    public void slept(Building build){
+        sleeping.add(build);
+        sleepTimes.add(Time.time);
+    }
+
+    /** Queues a building whose sleep state changed on a worker thread, so that it is moved in or out of its groups by {@link #update()}. */
+    public void changed(Building build){
+        synchronized(changed){
+            changed.add(build);
+        }
+    }
+
+    /** Applies sleep state changes of the parallel phase and wakes up buildings that slept for too long. Must be called before the groups are updated. */
+    public void update(){
+        for(int i = 0; i < changed.size; i++){
+            changed.items[i].syncSleep();
+        }
+        changed.clear();
+
+        while(head < sleeping.size && Time.time - sleepTimes.items[head] >= maxSleepTime){
+            Building build = sleeping.items[head];
+            sleeping.items[head++] = null;
+
+            if(build.sleeping()){
+                build.wakeUp();
+            }
+        }
+
+        //drop woken buildings from the front once they make up half of the queue
+        if(head > 0 && head >= sleeping.size / 2){
+            System.arraycopy(sleeping.items, head, sleeping.items, 0, sleeping.size - head);
+            System.arraycopy(sleepTimes.items, head, sleepTimes.items, 0, sleepTimes.size - head);
+            sleeping.truncate(sleeping.size - head);
+            sleepTimes.size -= head;
+            head = 0;
+        }
+    }
+
+    private void clear(){
+        sleeping.clear();
+        sleepTimes.clear();
+        head = 0;
+        synchronized(changed){
+            changed.clear();
+        }
+    }
+}
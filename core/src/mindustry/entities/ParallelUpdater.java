@@ -0,0 +1,246 @@
+package mindustry.entities;
+
+import arc.*;
+import arc.struct.*;
+import arc.util.*;
+import mindustry.game.EventType.*;
+import mindustry.gen.*;
+import mindustry.net.Administration.*;
+import mindustry.world.*;
+
+import java.util.concurrent.*;
+
+import static mindustry.Vars.*;
+
+/**
+ * Updates buildings of blocks with {@link Block#parallelUpdate} on multiple threads, before the regular serial update of {@link Groups}.
+ * The world is split into square chunks, and a building is updated here only if every building in its proximity is parallel-safe and in the same chunk,
+ * so buildings of different chunks never interact. Everything else, including buildings at chunk borders, is updated in the serial phase as before.
+ * Chunks are updated in four checkerboard passes, so that adjacent chunks never run at the same time.
+ * Buildings of a chunk are updated on one thread in tile order, which makes the outcome independent of the amount of workers.
+ * Only the chunks around changed tiles are collected again before the next update.
+ * This only runs on headless servers, so clients update conveyors in the regular order, and their local simulation may briefly differ from the server until blocks are synced.
+ */
+public class ParallelUpdater{
+    /** Side length of a chunk, in tiles. */
+    public static final int chunkSize = 32;
+    /** Distance from a changed tile at which the center of a building may be, for its proximity to change. */
+    private static final int changeRange = maxBlockSize + 1;
+
+    /** Whether the parallel phase is running. Outside of it, buildings that are updated here are skipped by {@link Building#update()}. */
+    public static volatile boolean updating;
+
+    /** Minimum amount of buildings in a pass for it to be split up between workers. Smaller passes are updated on the main thread. */
+    public int minParallel = 512;
+
+    /** Buildings that are updated in parallel, by chunk. */
+    private Seq<Building>[] chunks = new Seq[0];
+    /** Indices of non-empty chunks for each checkerboard pass. */
+    private final IntSeq[] passes = {new IntSeq(), new IntSeq(), new IntSeq(), new IntSeq()};
+    private final int[] passSizes = new int[4];
+    /** Chunks that have to be collected again, as the proximity of their buildings may have changed. */
+    private final IntSeq dirtyChunks = new IntSeq();
+    private boolean[] dirtyFlags = {};
+    private int chunksX, chunksY;
+    private boolean active, dirty = true;
+
+    public ParallelUpdater(){
+        Events.on(ResetEvent.class, e -> {
+            clear();
+            dirty = true;
+        });
+        Events.on(WorldLoadEvent.class, e -> dirty = true);
+        Events.on(TileChangeEvent.class, e -> {
+            if(active && !dirty) changed(e.tile);
+        });
+    }
+
+    /** Updates all buildings that can be updated in parallel, if enabled with {@link Config#parallelBuildings}. */
+    public void update(){
+        //buildings update sounds and fog rendering on clients, which must happen on the main thread
+        boolean enable = headless && !net.client() && Config.parallelBuildings.bool();
+
+        if(enable != active){
+            active = enable;
+            dirty = true;
+            if(!enable) clear();
+        }
+
+        if(!active) return;
+
+        if(dirty){
+            rebuild();
+        }else if(!dirtyChunks.isEmpty()){
+            for(int i = 0; i < dirtyChunks.size; i++){
+                int chunk = dirtyChunks.items[i];
+                dirtyFlags[chunk] = false;
+                collect(chunk);
+            }
+            dirtyChunks.clear();
+            updatePasses();
+        }
+
+        updating = true;
+        try{
+            for(int i = 0; i < passes.length; i++){
+                IntSeq pass = passes[i];
+                if(pass.isEmpty()) continue;
+
+                if(passSizes[i] < minParallel){
+                    for(int j = 0; j < pass.size; j++){
+                        updateChunk(pass.items[j]);
+                    }
+                }else{
+                    asyncCore.pool().invoke(new ChunkSpan(pass.items, 0, pass.size));
+                }
+            }
+        }finally{
+            updating = false;
+        }
+    }
+
+    private void updateChunk(int index){
+        Seq<Building> builds = chunks[index];
+        for(int i = 0; i < builds.size; i++){
+            Building build = builds.items[i];
+            //removed buildings are cleared when their chunk is collected again
+            if(build.updateInParallel){
+                build.update();
+            }
+        }
+    }
+
+    /** Marks the chunks of all buildings that a changed tile may be next to. */
+    private void changed(Tile tile){
+        int minX = Math.max(tile.x - changeRange, 0) / chunkSize, maxX = Math.min(tile.x + changeRange, world.width() - 1) / chunkSize;
+        int minY = Math.max(tile.y - changeRange, 0) / chunkSize, maxY = Math.min(tile.y + changeRange, world.height() - 1) / chunkSize;
+
+        for(int cy = minY; cy <= maxY; cy++){
+            for(int cx = minX; cx <= maxX; cx++){
+                int chunk = cx + cy * chunksX;
+                if(chunk < dirtyFlags.length && !dirtyFlags[chunk]){
+                    dirtyFlags[chunk] = true;
+                    dirtyChunks.add(chunk);
+                }
+            }
+        }
+    }
+
+    private void rebuild(){
+        dirty = false;
+        clear();
+
+        chunksX = (world.width() + chunkSize - 1) / chunkSize;
+        chunksY = (world.height() + chunkSize - 1) / chunkSize;
+        int amount = chunksX * chunksY;
+        if(chunks.length != amount){
+            chunks = new Seq[amount];
+            dirtyFlags = new boolean[amount];
+        }
+
+        for(int i = 0; i < amount; i++){
+            collect(i);
+        }
+        updatePasses();
+    }
+
+    /** Collects the buildings of a chunk that can be updated in parallel, in tile order. */
+    private void collect(int chunk){
+        if(chunks[chunk] == null){
+            chunks[chunk] = new Seq<>(Building.class);
+        }
+
+        Seq<Building> builds = chunks[chunk];
+        for(int i = 0; i < builds.size; i++){
+            builds.items[i].updateInParallel = false;
+        }
+        builds.clear();
+
+        int x = (chunk % chunksX) * chunkSize, y = (chunk / chunksX) * chunkSize;
+        int maxX = Math.min(x + chunkSize, world.width()), maxY = Math.min(y + chunkSize, world.height());
+        for(int ty = y; ty < maxY; ty++){
+            for(int tx = x; tx < maxX; tx++){
+                Building build = world.rawTile(tx, ty).build;
+                if(build != null && build.tile.x == tx && build.tile.y == ty && canUpdateParallel(build)){
+                    builds.add(build);
+                    build.updateInParallel = true;
+                }
+            }
+        }
+    }
+
+    private void updatePasses(){
+        for(int i = 0; i < passes.length; i++){
+            passes[i].clear();
+            passSizes[i] = 0;
+        }
+
+        for(int i = 0; i < chunks.length; i++){
+            if(chunks[i] == null || chunks[i].isEmpty()) continue;
+
+            int pass = (i % chunksX) % 2 + (i / chunksX) % 2 * 2;
+            passes[pass].add(i);
+            passSizes[pass] += chunks[i].size;
+        }
+    }
+
+    private boolean canUpdateParallel(Building build){
+        if(!build.block.parallelUpdate || build.tile.build != build) return false;
+
+        int chunk = chunk(build);
+        for(int i = 0; i < build.proximity.size; i++){
+            Building other = build.proximity.items[i];
+            if(!other.block.parallelUpdate || chunk(other) != chunk) return false;
+        }
+        return true;
+    }
+
+    private int chunk(Building build){
+        return build.tile.x / chunkSize + build.tile.y / chunkSize * chunksX;
+    }
+
+    private void clear(){
+        for(Seq<Building> builds : chunks){
+            if(builds == null) continue;
+
+            for(int i = 0; i < builds.size; i++){
+                builds.items[i].updateInParallel = false;
+            }
+            builds.clear();
+        }
+
+        for(int i = 0; i < passes.length; i++){
+            passes[i].clear();
+            passSizes[i] = 0;
+        }
+
+        for(int i = 0; i < dirtyChunks.size; i++){
+            dirtyFlags[dirtyChunks.items[i]] = false;
+        }
+        dirtyChunks.clear();
+    }
+
+    /** Updates a range of chunks of one pass, splitting it up between workers. */
+    class ChunkSpan extends RecursiveAction{
+        final int[] chunks;
+        final int from, to;
+
+        ChunkSpan(int[] chunks, int from, int to){
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute(){
+            if(to - from <= 1){
+                for(int i = from; i < to; i++){
+                    updateChunk(chunks[i]);
+                }
+            }else{
+                int mid = (from + to) >>> 1;
+                invokeAll(new ChunkSpan(chunks, from, mid), new ChunkSpan(chunks, mid, to));
+            }
+        }
+    }
+}
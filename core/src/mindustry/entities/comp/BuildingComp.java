@@ -43,6 +43,7 @@ import mindustry.world.meta.*;
 import mindustry.world.modules.*;
 
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 import static mindustry.Vars.*;
 
@@ -55,7 +56,9 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
     static final Seq<Building> tempBuilds = new Seq<>();
     static final BuildTeamChangeEvent teamChangeEvent = new BuildTeamChangeEvent();
     static final BuildDamageEvent bulletDamageEvent = new BuildDamageEvent();
-    static int sleepingEntities = 0;
+    static final AtomicInteger sleepingEntities = new AtomicInteger();
+    /** Whether idle buildings can fall asleep, which skips their updates until something wakes them up. Disabling it doesn't wake sleeping buildings. */
+    static boolean allowSleep = true;
     
     @Import float x, y, health, maxHealth;
     @Import Team team;
@@ -74,6 +77,7 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
     /** TODO Each bit corresponds to a team ID. Only 64 are supported. Does not work on servers. */
     transient long visibleFlags;
     transient boolean wasVisible; //used only by the block renderer when fog is on (TODO replace with discovered check?)
+    transient boolean updateInParallel; //used only by ParallelUpdater
 
     transient boolean enabled = true;
     transient @Nullable Building lastDisabler;
@@ -605,13 +609,23 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
         return ((state.tick / 30f) % 1f) < efficiency ? BlockStatus.active : BlockStatus.noInput;
     }
 
-    /** Call when nothing is happening to the entity. This increments the internal sleep timer. */
+    /**
+     * Call when nothing is happening to the entity. This increments the internal sleep timer.
+     * Sleeping buildings are taken out of their groups, so they are not updated until something wakes them up with {@link #noSleep()}:
+     * receiving items or liquids, configuration, damage, proximity changes, or {@link BuildingSleeper#maxSleepTime} passing.
+     * Only sleep in a state where updating would not change anything until one of these happens.
+     */
     public void sleep(){
         sleepTime += Time.delta;
-        if(!sleeping && sleepTime >= timeToSleep){
-            remove();
+        if(!sleeping && allowSleep && sleepTime >= timeToSleep){
             sleeping = true;
-            sleepingEntities++;
+            sleepingEntities.incrementAndGet();
+
+            if(ParallelUpdater.updating){
+                buildingSleeper.changed(self());
+            }else{
+                syncSleep();
+            }
         }
     }
 
@@ -619,12 +633,38 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
     public void noSleep(){
         sleepTime = 0f;
         if(sleeping){
-            add();
             sleeping = false;
-            sleepingEntities--;
+            sleepingEntities.decrementAndGet();
+
+            if(ParallelUpdater.updating){
+                buildingSleeper.changed(self());
+            }else{
+                syncSleep();
+            }
+        }
+    }
+
+    /** Wakes this building up without resetting its sleep timer, so that it falls asleep again right away if it is still idle. */
+    public void wakeUp(){
+        float time = sleepTime;
+        noSleep();
+        sleepTime = time;
+    }
+
+    /** Moves this building out of its groups if it is sleeping, or back into them if it is not. Must be called on the main thread. */
+    public void syncSleep(){
+        if(sleeping && isAdded()){
+            remove();
+            buildingSleeper.slept(self());
+        }else if(!sleeping && !isAdded() && tile.build == self()){
+            add();
         }
     }
 
+    public boolean sleeping(){
+        return sleeping;
+    }
+
     /** Returns the version of this Building IO code.*/
     public byte version(){
         return 0;
@@ -810,6 +850,7 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
     }
 
     public void handleItem(Building source, Item item){
+        noSleep();
         items.add(item, 1);
     }
 
@@ -822,6 +863,7 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
     }
 
     public void handleLiquid(Building source, Liquid liquid, float amount){
+        noSleep();
         liquids.add(liquid, amount);
     }
 
@@ -1319,7 +1361,9 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
         if(value instanceof Block) type = Block.class;
         if(value instanceof Liquid) type = Liquid.class;
         if(value instanceof UnitType) type = UnitType.class;
-        
+
+        noSleep();
+
         if(builder != null && builder.isPlayer()){
             updateLastAccess(builder.getPlayer());
         }
@@ -1924,6 +1968,8 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
     }
 
     public void healthChanged(){
+        noSleep();
+
         //server-side, health updates are batched.
         if(net.server()){
             netServer.buildHealthUpdate(self());
@@ -1989,6 +2035,7 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
     public void control(LAccess type, double p1, double p2, double p3, double p4){
         if(type == LAccess.enabled){
             enabled = !Mathf.zero((float)p1);
+            noSleep();
         }
     }
 
@@ -2082,6 +2129,11 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
         if(sound != null){
             sound.stop();
         }
+
+        //sleeping buildings are only taken out of their groups, and keep their place in the parallel phase
+        if(!sleeping){
+            updateInParallel = false;
+        }
     }
 
     @Override
@@ -2104,6 +2156,12 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
         //TODO should just avoid updating buildings instead
         if(state.isEditor()) return;
 
+        //sleeping buildings are out of their groups, but chunks of the parallel phase still contain them
+        if(sleeping) return;
+
+        //updated by the parallel phase before the group update, see Block#parallelUpdate
+        if(updateInParallel && !ParallelUpdater.updating) return;
+
         //TODO refactor to timestamp-based system?
         if((timeScaleDuration -= Time.delta) <= 0f || !block.canOverdrive){
             timeScale = 1f;
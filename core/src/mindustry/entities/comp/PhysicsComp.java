@@ -14,7 +14,7 @@ abstract class PhysicsComp implements Velc, Hitboxc, Flyingc{
     @Import float hitSize, x, y;
     @Import Vec2 vel;
 
-    transient PhysicRef physref;
+    transient int physref = -1;
 
     //mass is simply the area of this object
     float mass(){
@@ -114,13 +114,23 @@ public class Saves{
             if(time > Core.settings.getInt("saveinterval") * 60){
                 saving = true;
 
+                boolean async = Core.settings.getBool("asyncautosave");
+
                 try{
-                    current.save();
+                    if(async){
+                        //stays marked as saving until the file is written
+                        current.saveAsync(() -> saving = false);
+                    }else{
+                        current.save();
+                    }
                 }catch(Throwable t){
                     Log.err(t);
+                    async = false;
                 }
 
-                Time.runTask(3f, () -> saving = false);
+                if(!async){
+                    Time.runTask(3f, () -> saving = false);
+                }
 
                 time = 0;
             }
@@ -231,6 +241,29 @@ public class Saves{
             savePreview();
         }
 
+        /**
+         * Saves in the background, see {@link SaveIO#saveAsync}. The preview is taken right away, to match the saved state.
+         * The metadata is updated once the file is written, after which {@code done} runs on the main thread, whether the save failed or not.
+         */
+        public void saveAsync(@Nullable Runnable done){
+            long prev = totalPlaytime;
+
+            SaveIO.saveAsync(file, error -> {
+                if(error != null){
+                    Log.err("Failed to autosave", error);
+                }else{
+                    meta = SaveIO.getMeta(file);
+                }
+                if(done != null) done.run();
+            });
+            if(state.isGame()){
+                current = this;
+            }
+
+            totalPlaytime = prev;
+            savePreview();
+        }
+
         private void savePreview(){
             if(Core.assets.isLoaded(loadPreviewFile().path())){
                 Core.assets.unload(loadPreviewFile().path());
@@ -0,0 +1,152 @@
+package mindustry.io;
+
+import arc.func.*;
+import arc.struct.*;
+import arc.util.*;
+import arc.util.io.*;
+import mindustry.io.SaveSections.*;
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+import static mindustry.Vars.*;
+
+/**
+ * Compresses data into a standard zlib stream in independent blocks on the shared {@link mindustry.async.AsyncCore#pool()}.
+ * Every block is primed with the last 32KB of the previous one and ends on a byte boundary, so they can simply be concatenated
+ * and read back with a regular {@link InflaterInputStream}, like the output of {@link FastDeflaterOutputStream}.
+ * Can be called from any thread, including workers of the pool, which help with the blocks instead of waiting for them.
+ */
+public class ParallelDeflate{
+    /** Uncompressed size of a block. */
+    public static final int blockSize = 256 * 1024;
+    /** Maximum distance of deflate back-references. */
+    static final int window = 32 * 1024;
+
+    /** Compresses the specified bytes, writing every block as soon as it and the ones before it are done. */
+    public static void write(byte[] data, int offset, int length, OutputStream output) throws IOException{
+        write(data, offset, length, null, output);
+    }
+
+    /**
+     * Compresses the specified bytes like {@link #write(byte[], int, int, OutputStream)}.
+     * If sections are specified, blocks never cross their bounds or reference bytes of previous sections, so each one can be inflated on its own.
+     * Their positions in the output are recorded, and the index is written after the zlib stream.
+     * @param sections sections of the data, with offsets relative to the offset of the data.
+     */
+    public static void write(byte[] data, int offset, int length, @Nullable SaveSections sections, OutputStream output) throws IOException{
+        int ranges = sections == null ? 1 : sections.sections.size;
+        //index of the first block of every range, and one past the last
+        int[] firstBlock = new int[ranges + 1];
+        Seq<Prov<ReusableByteOutStream>> tasks = new Seq<>();
+
+        for(int r = 0; r < ranges; r++){
+            Section section = sections == null ? null : sections.sections.get(r);
+            int from = offset + (section == null ? 0 : section.offset), to = section == null ? offset + length : from + section.length;
+            boolean last = to == offset + length;
+
+            firstBlock[r] = tasks.size;
+            //only the last block finishes the stream, so it can't be taken from a previous save
+            if(section != null && section.reuse != null && !last) continue;
+
+            int blocks = Math.max((to - from + blockSize - 1) / blockSize, last ? 1 : 0);
+            for(int i = 0; i < blocks; i++){
+                int start = from + i * blockSize, end = Math.min(start + blockSize, to);
+                boolean finish = last && i == blocks - 1;
+                tasks.add(() -> deflate(data, from, start, end, finish));
+            }
+        }
+        firstBlock[ranges] = tasks.size;
+
+        ForkJoinTask<ReusableByteOutStream>[] blocks = new ForkJoinTask[tasks.size];
+        //a single block is not worth the round trip, and tools may write saves without the async core
+        ForkJoinPool pool = tasks.size > 1 && asyncCore != null ? asyncCore.pool() : null;
+        for(int i = 0; i < tasks.size; i++){
+            blocks[i] = ForkJoinTask.adapt(tasks.get(i)::get);
+            if(pool == null){
+                blocks[i].invoke();
+            }else{
+                pool.execute(blocks[i]);
+            }
+        }
+
+        //zlib header: deflate with a 32K window, fastest compression
+        output.write(0x78);
+        output.write(0x01);
+        long position = 2;
+
+        Adler32 adler = new Adler32();
+        adler.update(data, offset, length);
+
+        for(int r = 0; r < ranges; r++){
+            Section section = sections == null ? null : sections.sections.get(r);
+            int compressedLength = 0;
+
+            if(firstBlock[r] == firstBlock[r + 1] && section != null && section.reuse != null){
+                output.write(section.reuse);
+                compressedLength = section.reuse.length;
+                if(section.keep) section.compressed = section.reuse;
+            }else{
+                ByteArrayOutputStream kept = section != null && section.keep ? new ByteArrayOutputStream() : null;
+
+                for(int i = firstBlock[r]; i < firstBlock[r + 1]; i++){
+                    ReusableByteOutStream block = blocks[i].join();
+                    output.write(block.getBytes(), 0, block.size());
+                    if(kept != null) kept.write(block.getBytes(), 0, block.size());
+                    compressedLength += block.size();
+                }
+
+                if(kept != null) section.compressed = kept.toByteArray();
+            }
+
+            if(section != null){
+                section.position = position;
+                section.compressedLength = compressedLength;
+            }
+            position += compressedLength;
+        }
+
+        int checksum = (int)adler.getValue();
+        output.write(checksum >>> 24);
+        output.write(checksum >>> 16);
+        output.write(checksum >>> 8);
+        output.write(checksum);
+
+        if(sections != null){
+            sections.write(output);
+        }
+    }
+
+    /** @param origin start of the bytes that the block may reference, i.e. of the data or its section. */
+    static ReusableByteOutStream deflate(byte[] data, int origin, int start, int end, boolean last){
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        ReusableByteOutStream out = new ReusableByteOutStream((end - start) / 2 + 64);
+        byte[] buffer = new byte[8192];
+
+        try{
+            int dictionary = Math.min(window, start - origin);
+            if(dictionary > 0){
+                deflater.setDictionary(data, start - dictionary, dictionary);
+            }
+            deflater.setInput(data, start, end - start);
+
+            if(last){
+                deflater.finish();
+                while(!deflater.finished()){
+                    out.write(buffer, 0, deflater.deflate(buffer));
+                }
+            }else{
+                //a sync flush ends the block with an empty stored block, aligning it to a byte
+                int written;
+                do{
+                    written = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    out.write(buffer, 0, written);
+                }while(written == buffer.length);
+            }
+        }finally{
+            deflater.end();
+        }
+        return out;
+    }
+}
@@ -2,6 +2,7 @@ package mindustry.io;
 
 import arc.*;
 import arc.files.*;
+import arc.func.*;
 import arc.struct.*;
 import arc.util.*;
 import arc.util.io.*;
@@ -11,7 +12,9 @@ import mindustry.io.versions.*;
 import mindustry.world.*;
 
 import java.io.*;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.zip.*;
 
 import static mindustry.Vars.*;
@@ -20,7 +23,13 @@ public class SaveIO{
     /** Save format header. */
     public static final byte[] header = {'M', 'S', 'A', 'V'};
     public static final IntMap<SaveVersion> versions = new IntMap<>();
-    public static final Seq<SaveVersion> versionArray = Seq.with(new Save1(), new Save2(), new Save3(), new Save4(), new Save5(), new Save6(), new Save7(), new Save8());
+    public static final Seq<SaveVersion> versionArray = Seq.with(new Save1(), new Save2(), new Save3(), new Save4(), new Save5(), new Save6(), new Save7(), new Save8(), new Save9());
+
+    /** Compresses and writes background saves, one at a time. */
+    private static final ExecutorService saveExecutor = Threads.executor("Save Writer", 1);
+    private static @Nullable Future<?> lastSave;
+    /** Uncompressed save buffer that is not used by a background save. */
+    private static @Nullable ReusableByteOutStream freeSnapshot;
 
     static{
         for(SaveVersion version : versionArray){
@@ -37,6 +46,8 @@ public class SaveIO{
     }
 
     public static void save(Fi file){
+        awaitSaves();
+
         boolean exists = file.exists();
         if(exists) file.moveTo(backupFileFor(file));
         try{
@@ -47,6 +58,77 @@ public class SaveIO{
         }
     }
 
+    /**
+     * Saves the game in two phases: the save is written uncompressed into memory right away, which is what actually reads the game state,
+     * then it is compressed and written to a temporary file in the background, which replaces the file once complete.
+     * The previous file is kept as a backup, like with {@link #save(Fi)}.
+     * @param done called on the main thread when the save is written, with the exception if it failed.
+     */
+    public static void saveAsync(Fi file, @Nullable Cons<Throwable> done){
+        ReusableByteOutStream snapshot = takeSnapshot();
+        SaveSections sections = new SaveSections();
+        write(snapshot, null, sections);
+
+        lastSave = saveExecutor.submit(() -> {
+            //hidden, so it isn't mistaken for a save while it is written
+            Fi temp = file.sibling("." + file.name() + ".tmp");
+            Throwable error = null;
+
+            try{
+                try(OutputStream output = temp.write(false, bufferSize)){
+                    ParallelDeflate.write(snapshot.getBytes(), 0, snapshot.size(), sections, output);
+                }
+
+                if(file.exists()){
+                    java.nio.file.Files.move(file.file().toPath(), backupFileFor(file).file().toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+                java.nio.file.Files.move(temp.file().toPath(), file.file().toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }catch(Throwable e){
+                temp.delete();
+                error = e;
+            }finally{
+                returnSnapshot(snapshot);
+            }
+
+            if(done != null){
+                Throwable result = error;
+                Core.app.post(() -> done.get(result));
+            }else if(error != null){
+                Log.err("Failed to write save " + file.name(), error);
+            }
+        });
+    }
+
+    /** @return an empty buffer for an uncompressed save, which is reused between saves, as it is as large as the save itself. */
+    private static ReusableByteOutStream takeSnapshot(){
+        ReusableByteOutStream snapshot;
+        synchronized(SaveIO.class){
+            snapshot = freeSnapshot == null ? new ReusableByteOutStream() : freeSnapshot;
+            freeSnapshot = null;
+        }
+        snapshot.reset();
+        return snapshot;
+    }
+
+    /** Returns a buffer from {@link #takeSnapshot()} once its save is written. */
+    private static void returnSnapshot(ReusableByteOutStream snapshot){
+        synchronized(SaveIO.class){
+            freeSnapshot = snapshot;
+        }
+    }
+
+    /** Waits until all background saves are written. */
+    public static void awaitSaves(){
+        if(lastSave != null){
+            try{
+                lastSave.get();
+            }catch(Exception e){
+                Log.err(e);
+            }
+            lastSave = null;
+        }
+    }
+
     public static DataInputStream getStream(Fi file){
         return new DataInputStream(new InflaterInputStream(file.read(bufferSize)));
     }
@@ -111,8 +193,21 @@ public class SaveIO{
         return file.sibling(file.name() + "-backup." + file.extension());
     }
 
+    /** Writes the save uncompressed into memory, then compresses it into the file with an index of its sections. */
     public static void write(Fi file, StringMap tags){
-        write(new FastDeflaterOutputStream(file.write(false, bufferSize)), tags);
+        ReusableByteOutStream bytes = takeSnapshot();
+        try{
+            SaveSections sections = new SaveSections();
+            write(bytes, tags, sections);
+
+            try(OutputStream output = file.write(false, bufferSize)){
+                ParallelDeflate.write(bytes.getBytes(), 0, bytes.size(), sections, output);
+            }catch(IOException e){
+                throw new RuntimeException(e);
+            }
+        }finally{
+            returnSnapshot(bytes);
+        }
     }
 
     public static void write(Fi file){
@@ -120,9 +215,16 @@ public class SaveIO{
     }
 
     public static void write(OutputStream os, StringMap tags){
+        write(os, tags, null);
+    }
+
+    /** @param sections filled with the sections of the uncompressed save, so that they can be compressed independently. */
+    public static void write(OutputStream os, StringMap tags, @Nullable SaveSections sections){
+        SaveVersion ver = getVersion();
         try(DataOutputStream stream = new DataOutputStream(os)){
             Events.fire(new SaveWriteEvent());
-            SaveVersion ver = getVersion();
+            ver.sections = sections;
+            if(sections != null) sections.mark("header", 0);
 
             stream.write(header);
             stream.writeInt(ver.version);
@@ -131,8 +233,12 @@ public class SaveIO{
             }else{
                 ver.write(stream, tags);
             }
+
+            if(sections != null) sections.finish(stream.size());
         }catch(Throwable e){
             throw new RuntimeException(e);
+        }finally{
+            ver.sections = null;
         }
     }
 
@@ -145,20 +251,37 @@ public class SaveIO{
     }
 
     public static void load(Fi file, WorldContext context) throws SaveException{
+        awaitSaves();
+
         try{
             //try and load; if any exception at all occurs
-            load(new InflaterInputStream(file.read(bufferSize)), context);
+            load(read(file), context);
         }catch(SaveException e){
             Log.err(e);
             Fi backup = file.sibling(file.name() + "-backup." + file.extension());
             if(backup.exists()){
-                load(new InflaterInputStream(backup.read(bufferSize)), context);
+                load(read(backup), context);
             }else{
                 throw new SaveException(e.getCause());
             }
         }
     }
 
+    /** @return the uncompressed contents of a save file, decompressed in parallel if the file has an index of its sections. */
+    static InputStream read(Fi file) throws SaveException{
+        SaveSections sections = SaveSections.read(file);
+        if(sections == null){
+            return new InflaterInputStream(file.read(bufferSize));
+        }
+
+        try{
+            return new ByteArrayInputStream(sections.inflate(file));
+        }catch(Throwable e){
+            //includes running out of memory, so that the backup is tried
+            throw new SaveException(e);
+        }
+    }
+
     /** Loads from a deflated (!) input stream. */
     public static void load(InputStream is, WorldContext context) throws SaveException{
         try(CounterInputStream counter = new CounterInputStream(is); DataInputStream stream = new DataInputStream(counter)){
@@ -0,0 +1,245 @@
+package mindustry.io;
+
+import arc.files.*;
+import arc.struct.*;
+import arc.util.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+import static mindustry.Vars.*;
+
+/**
+ * Index of the sections of a save, which {@link ParallelDeflate} compresses independently of each other and writes after the zlib stream of the save.
+ * The file as a whole stays a regular zlib stream, but every section can also be inflated on its own with a raw {@link Inflater}, starting at its position.
+ * This lets tools seek to parts like the metadata or a single map region, and lets saves be decompressed in parallel.
+ * Sections are contiguous and cover the whole uncompressed save, starting with the header at 0.
+ * Their compressed bytes are contiguous as well, and followed by the Adler-32 checksum of the zlib stream.
+ */
+public class SaveSections{
+    /** Ends the index, after its length. */
+    public static final byte[] magic = {'M', 'S', 'I', 'X'};
+    static final int formatVersion = 1;
+    /** Deflate can't compress data by more than this ratio, so larger uncompressed lengths are corrupt. */
+    static final int maxRatio = 1032;
+    /** Smallest index entry: an empty name, the offsets and the lengths. */
+    static final int minEntryLength = 2 + 4 + 4 + 8 + 4;
+
+    public final Seq<Section> sections = new Seq<>();
+    /** Adler-32 checksum of the uncompressed save, as stored in the file. Only set for indices that were read. */
+    public int checksum;
+
+    /** Starts a new section at an offset of the uncompressed save, ending the previous one. */
+    public Section mark(String name, int offset){
+        Section section = new Section(name, offset);
+        if(sections.any()){
+            Section last = sections.peek();
+            last.length = offset - last.offset;
+        }
+        sections.add(section);
+        return section;
+    }
+
+    /** Ends the last section. */
+    public void finish(int length){
+        if(sections.any()){
+            Section last = sections.peek();
+            last.length = length - last.offset;
+        }
+    }
+
+    /** @return the first section with the specified name, or null if there is none. */
+    public @Nullable Section get(String name){
+        return sections.find(s -> s.name.equals(name));
+    }
+
+    /** @return the uncompressed length of the save. */
+    public int length(){
+        return sections.isEmpty() ? 0 : sections.peek().offset + sections.peek().length;
+    }
+
+    /** Writes the index, followed by its length and {@link #magic}, so that it can be found from the end of the file. */
+    public void write(OutputStream output) throws IOException{
+        ReusableByteOutStream bytes = new ReusableByteOutStream();
+        DataOutputStream stream = new DataOutputStream(bytes);
+
+        stream.writeInt(formatVersion);
+        stream.writeInt(sections.size);
+        for(Section section : sections){
+            stream.writeUTF(section.name);
+            stream.writeInt(section.offset);
+            stream.writeInt(section.length);
+            stream.writeLong(section.position);
+            stream.writeInt(section.compressedLength);
+        }
+        stream.writeInt(bytes.size());
+        stream.write(magic);
+
+        output.write(bytes.getBytes(), 0, bytes.size());
+    }
+
+    /**
+     * @return the index of a save file, or null if it has none, e.g. because it was written by an older version.
+     * Indices that don't describe contiguous sections inside the file are treated as missing, so the save is read as a regular zlib stream.
+     */
+    public static @Nullable SaveSections read(Fi file){
+        //files that are not on disk, like assets on Android, are read as a stream
+        if(!file.file().isFile()) return null;
+
+        try(RandomAccessFile input = new RandomAccessFile(file.file(), "r")){
+            long fileLength = input.length();
+            //the whole file is read into an array when inflating
+            if(fileLength < 8 || fileLength > Integer.MAX_VALUE) return null;
+
+            input.seek(fileLength - 8);
+            int length = input.readInt();
+            byte[] end = new byte[magic.length];
+            input.readFully(end);
+            if(!Arrays.equals(end, magic) || length < 8 || length > fileLength - 8) return null;
+
+            long indexStart = fileLength - 8 - length;
+            input.seek(indexStart);
+            if(input.readInt() != formatVersion) return null;
+
+            int amount = input.readInt();
+            if(amount <= 0 || amount > (length - 8) / minEntryLength){
+                return invalid(file, "section count " + amount);
+            }
+
+            SaveSections index = new SaveSections();
+            //the zlib header comes first, the checksum of the stream after the last section
+            long offset = 0, position = 2;
+            for(int i = 0; i < amount; i++){
+                Section section = new Section(input.readUTF(), input.readInt());
+                section.length = input.readInt();
+                section.position = input.readLong();
+                section.compressedLength = input.readInt();
+
+                if(section.offset != offset || section.length < 0 || section.position != position || section.compressedLength < 0 ||
+                    section.length > (long)section.compressedLength * maxRatio + 64){
+                    return invalid(file, "section \"" + section.name + "\"");
+                }
+
+                offset += section.length;
+                position += section.compressedLength;
+                if(offset > Integer.MAX_VALUE - 8 || position + 4 > indexStart){
+                    return invalid(file, "section \"" + section.name + "\"");
+                }
+                index.sections.add(section);
+            }
+
+            if(input.getFilePointer() != fileLength - 8 || position + 4 != indexStart){
+                return invalid(file, "index length");
+            }
+
+            input.seek(position);
+            index.checksum = input.readInt();
+            return index;
+        }catch(IOException e){
+            Log.err("Failed to read save index of " + file.name(), e);
+            return null;
+        }
+    }
+
+    private static @Nullable SaveSections invalid(Fi file, String cause){
+        Log.warn("Ignoring invalid save index of @: @", file.name(), cause);
+        return null;
+    }
+
+    /** @return a stream of the uncompressed bytes of one section of a save file. */
+    public static DataInputStream open(Fi file, Section section) throws IOException{
+        byte[] compressed = new byte[section.compressedLength];
+        try(RandomAccessFile input = new RandomAccessFile(file.file(), "r")){
+            input.seek(section.position);
+            input.readFully(compressed);
+        }
+
+        byte[] raw = new byte[section.length];
+        inflate(compressed, 0, compressed.length, raw, 0, raw.length);
+        return new DataInputStream(new ByteArrayInputStream(raw));
+    }
+
+    /**
+     * Decompresses all sections of a save file in parallel, and verifies the checksum of the result.
+     * @return the uncompressed save.
+     */
+    public byte[] inflate(Fi file) throws IOException{
+        byte[] compressed = file.readBytes();
+        byte[] raw = new byte[length()];
+
+        ForkJoinTask<?>[] tasks = new ForkJoinTask[sections.size];
+        for(int i = 0; i < sections.size; i++){
+            Section section = sections.get(i);
+            //the file may have changed since its index was read
+            if(section.position + section.compressedLength > compressed.length){
+                throw new IOException("Section \"" + section.name + "\" ends after the end of the file.");
+            }
+            tasks[i] = asyncCore.pool().submit(() -> {
+                try{
+                    inflate(compressed, (int)section.position, section.compressedLength, raw, section.offset, section.length);
+                }catch(IOException e){
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+
+        try{
+            for(ForkJoinTask<?> task : tasks){
+                task.join();
+            }
+        }catch(RuntimeException e){
+            throw new IOException("Failed to decompress save sections.", e);
+        }
+
+        Adler32 adler = new Adler32();
+        adler.update(raw, 0, raw.length);
+        if((int)adler.getValue() != checksum){
+            throw new IOException("Save checksum mismatch: " + Integer.toHexString((int)adler.getValue()) + " != " + Integer.toHexString(checksum));
+        }
+        return raw;
+    }
+
+    static void inflate(byte[] input, int offset, int length, byte[] output, int outputOffset, int outputLength) throws IOException{
+        Inflater inflater = new Inflater(true);
+        try{
+            inflater.setInput(input, offset, length);
+            int read = 0;
+            while(read < outputLength){
+                int count = inflater.inflate(output, outputOffset + read, outputLength - read);
+                if(count == 0 && (inflater.needsInput() || inflater.finished())){
+                    throw new IOException("Save section is shorter than its recorded length: " + read + " < " + outputLength);
+                }
+                read += count;
+            }
+        }catch(DataFormatException e){
+            throw new IOException(e);
+        }finally{
+            inflater.end();
+        }
+    }
+
+    public static class Section{
+        public final String name;
+        /** Offset of the first byte in the uncompressed save. */
+        public final int offset;
+        /** Uncompressed length. */
+        public int length;
+        /** Offset of the first compressed byte in the file. */
+        public long position;
+        public int compressedLength;
+
+        /** Compressed bytes to write instead of compressing the section again. Only valid if the uncompressed bytes are the same as when they were kept. */
+        public @Nullable byte[] reuse;
+        /** Whether {@link #compressed} should be set once the section is written, so that it can be reused by a later save. */
+        public boolean keep;
+        /** Compressed bytes of this section, if it was kept. Set on the thread that compresses the save. */
+        public volatile @Nullable byte[] compressed;
+
+        Section(String name, int offset){
+            this.name = name;
+            this.offset = offset;
+        }
+    }
+}
@@ -34,6 +34,8 @@ public abstract class SaveVersion extends SaveFileReader{
     //stores entity mappings for use after readEntityMapping
     //if null, fall back to EntityMapping's values
     protected @Nullable Prov[] entityMapping;
+    //sections of the save being written, which versions that support seeking mark as they go; null if the save has no index
+    public @Nullable SaveSections sections;
 
     /**
      * Registers a custom save chunk reader/writer by name. This is mostly used for mods that need to save extra data.
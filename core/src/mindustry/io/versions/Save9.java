@@ -0,0 +1,364 @@
+package mindustry.io.versions;
+
+import arc.*;
+import arc.struct.*;
+import arc.util.*;
+import arc.util.io.*;
+import mindustry.content.*;
+import mindustry.game.EventType.*;
+import mindustry.io.*;
+import mindustry.io.SaveSections.*;
+import mindustry.world.*;
+
+import java.io.*;
+import java.util.*;
+
+import static mindustry.Vars.*;
+
+/**
+ * Splits the map into square regions, preceded by a table of their lengths. Regions are stored uncompressed in the map region of the save,
+ * but every one of them is marked as a separate section of the save, so that it is compressed once and independently of the others, and can be found in the file without inflating anything before it.
+ * Within a region, tiles are encoded like in previous versions, with floors of all regions read before any of their blocks.
+ * Encoded regions are kept between writes. Regions without buildings are only encoded again if the hash of their tiles changed.
+ * Regions with buildings are encoded on every write, as buildings change their state without any tile change, and there is no reliable signal for that;
+ * but the compressed bytes of a section are still reused if its region encodes to the same bytes, e.g. because its buildings are idle or asleep.
+ */
+public class Save9 extends SaveVersion{
+    /** Side length of a region in tiles. */
+    public static final int regionSize = 64;
+
+    //uncompressed regions of the map being written, back to back
+    final ReusableByteOutStream tileOutput = new ReusableByteOutStream();
+    final DataOutputStream tileData = new DataOutputStream(tileOutput);
+    final IntSeq tileOffsets = new IntSeq();
+
+    //regions of the last written map, so that unchanged ones don't have to be encoded or compressed again
+    int cachedWidth, cachedHeight;
+    /** Hash of the tiles of regions without buildings, 0 for regions with buildings, which can't be skipped. */
+    long[] cachedHashes = {};
+    /** Encoded bytes of every region. */
+    byte[][] cachedRaw = {};
+    /** Section every region was last written to. Its compressed bytes are set once the save is compressed, and are valid as long as the region is the same. */
+    Section[] cachedSections = {};
+
+    public Save9(){
+        super(9);
+
+        Events.on(WorldLoadEvent.class, e -> clearRegionCache());
+    }
+
+    /** Discards the regions of the last written map. */
+    public void clearRegionCache(){
+        cachedWidth = cachedHeight = 0;
+        cachedHashes = new long[0];
+        cachedRaw = new byte[0][];
+        cachedSections = new Section[0];
+    }
+
+    @Override
+    public void write(DataOutputStream stream, StringMap extraTags) throws IOException{
+        mark("meta", stream);
+        region("meta", stream, out -> writeMeta(out, extraTags));
+        mark("content", stream);
+        region("content", stream, this::writeContentHeader);
+
+        //the map is written directly instead of as a chunk, so that the sections of its regions can be marked
+        mark("map", stream);
+        try{
+            int regions = encodeMap();
+            stream.writeInt(mapHeaderLength(regions) + tileOutput.size());
+            writeMapHeader(stream, regions);
+
+            for(int r = 0; r < regions; r++){
+                Section section = mark("region-" + r, stream);
+                if(section != null){
+                    section.keep = true;
+                    if(cachedSections[r] != null) section.reuse = cachedSections[r].compressed;
+                    cachedSections[r] = section;
+                }
+
+                stream.write(tileOutput.getBytes(), tileOffsets.get(r), tileOffsets.get(r + 1) - tileOffsets.get(r));
+            }
+        }catch(Throwable e){
+            throw new IOException("Error writing region \"map\".", e);
+        }
+
+        mark("entities", stream);
+        region("entities", stream, this::writeEntities);
+        mark("markers", stream);
+        region("markers", stream, this::writeMarkers);
+        mark("custom", stream);
+        region("custom", stream, s -> writeCustomChunks(s, false));
+    }
+
+    @Nullable Section mark(String name, DataOutputStream stream){
+        return sections == null ? null : sections.mark(name, stream.size());
+    }
+
+    @Override
+    public void writeMap(DataOutput stream) throws IOException{
+        int regions = encodeMap();
+        writeMapHeader(stream, regions);
+        stream.write(tileOutput.getBytes(), 0, tileOutput.size());
+    }
+
+    static int mapHeaderLength(int regions){
+        return 2 + 2 + 2 + 4 + regions * 4;
+    }
+
+    void writeMapHeader(DataOutput stream, int regions) throws IOException{
+        stream.writeShort(cachedWidth);
+        stream.writeShort(cachedHeight);
+        stream.writeShort(regionSize);
+        stream.writeInt(regions);
+        for(int r = 0; r < regions; r++){
+            stream.writeInt(tileOffsets.get(r + 1) - tileOffsets.get(r));
+        }
+    }
+
+    /** Encodes all regions of the map into {@link #tileOutput}, updating the cache. @return the amount of regions. */
+    int encodeMap() throws IOException{
+        int width = world.width(), height = world.height();
+        int regionsX = (width + regionSize - 1) / regionSize, regionsY = (height + regionSize - 1) / regionSize, regions = regionsX * regionsY;
+
+        if(width != cachedWidth || height != cachedHeight){
+            cachedWidth = width;
+            cachedHeight = height;
+            cachedHashes = new long[regions];
+            cachedRaw = new byte[regions][];
+            cachedSections = new Section[regions];
+        }
+
+        tileOutput.reset();
+        tileOffsets.clear();
+
+        for(int r = 0; r < regions; r++){
+            int x = (r % regionsX) * regionSize, y = (r / regionsX) * regionSize, w = Math.min(regionSize, width - x), h = Math.min(regionSize, height - y);
+            int from = tileOutput.size();
+            tileOffsets.add(from);
+
+            //regions without buildings can only change along with their tiles, which are cheap to hash
+            long hash = hashRegion(x, y, w, h);
+            byte[] raw = cachedRaw[r];
+            if(raw != null && hash != 0 && hash == cachedHashes[r]){
+                tileOutput.write(raw);
+                continue;
+            }
+            cachedHashes[r] = hash;
+
+            writeRegion(tileData, x, y, w, h);
+
+            if(raw == null || !equal(raw, tileOutput.getBytes(), from, tileOutput.size())){
+                cachedRaw[r] = Arrays.copyOfRange(tileOutput.getBytes(), from, tileOutput.size());
+                //the compressed bytes of the last section no longer match
+                cachedSections[r] = null;
+            }
+        }
+        tileOffsets.add(tileOutput.size());
+
+        return regions;
+    }
+
+    @Override
+    public void readMap(DataInput stream, WorldContext context) throws IOException{
+        int width = stream.readUnsignedShort();
+        int height = stream.readUnsignedShort();
+        int size = stream.readUnsignedShort();
+        int regions = stream.readInt();
+        int regionsX = (width + size - 1) / size;
+
+        byte[][] bytes = new byte[regions][];
+        for(int r = 0; r < regions; r++){
+            bytes[r] = new byte[stream.readInt()];
+        }
+
+        //floors and blocks of a region are next to each other, so every region is read before any of them is parsed
+        DataInputStream[] inputs = new DataInputStream[regions];
+        for(int r = 0; r < regions; r++){
+            stream.readFully(bytes[r]);
+            inputs[r] = new DataInputStream(new ByteArrayInputStream(bytes[r]));
+        }
+
+        boolean generating = context.isGenerating();
+
+        if(!generating) context.begin();
+        try{
+            context.resize(width, height);
+
+            //every tile needs to exist before blocks are placed, as multiblocks can span regions
+            for(int r = 0; r < regions; r++){
+                int x = (r % regionsX) * size, y = (r / regionsX) * size;
+                readRegionFloors(inputs[r], context, x, y, Math.min(size, width - x), Math.min(size, height - y));
+            }
+
+            for(int r = 0; r < regions; r++){
+                int x = (r % regionsX) * size, y = (r / regionsX) * size;
+                readRegionBlocks(inputs[r], context, width, x, y, Math.min(size, width - x), Math.min(size, height - y));
+            }
+        }finally{
+            if(!generating) context.end();
+        }
+    }
+
+    /** @return a hash of the tiles in a region, or 0 if it contains buildings. */
+    long hashRegion(int x, int y, int w, int h){
+        long hash = 1;
+        for(int ty = y; ty < y + h; ty++){
+            for(int tx = x; tx < x + w; tx++){
+                Tile tile = world.rawTile(tx, ty);
+                if(tile.build != null) return 0;
+
+                hash = hash * 0x100000001b3L + (((long)tile.floorID() << 48) | ((long)tile.overlayID() << 32) | ((long)tile.blockID() << 16) | (tile.data & 0xff));
+            }
+        }
+        //0 is reserved for regions with buildings
+        return hash == 0 ? 1 : hash;
+    }
+
+    static boolean equal(byte[] cached, byte[] data, int from, int to){
+        if(cached.length != to - from) return false;
+
+        for(int i = 0; i < cached.length; i++){
+            if(cached[i] != data[from + i]) return false;
+        }
+        return true;
+    }
+
+    void writeRegion(DataOutput stream, int x, int y, int w, int h) throws IOException{
+        int total = w * h;
+
+        //floor + overlay
+        for(int i = 0; i < total; i++){
+            Tile tile = world.rawTile(x + i % w, y + i / w);
+            stream.writeShort(tile.floorID());
+            stream.writeShort(tile.overlayID());
+            int consecutives = 0;
+
+            for(int j = i + 1; j < total && consecutives < 255; j++){
+                Tile nextTile = world.rawTile(x + j % w, y + j / w);
+
+                if(nextTile.floorID() != tile.floorID() || nextTile.overlayID() != tile.overlayID()){
+                    break;
+                }
+
+                consecutives++;
+            }
+
+            stream.writeByte(consecutives);
+            i += consecutives;
+        }
+
+        //blocks
+        for(int i = 0; i < total; i++){
+            Tile tile = world.rawTile(x + i % w, y + i / w);
+            stream.writeShort(tile.blockID());
+
+            boolean savedata = tile.block().saveData;
+            byte packed = (byte)((tile.build != null ? 1 : 0) | (savedata ? 2 : 0));
+
+            stream.writeByte(packed);
+
+            //only write the entity for multiblocks once - in the center
+            if(tile.build != null){
+                if(tile.isCenter()){
+                    stream.writeBoolean(true);
+                    writeChunk(stream, true, out -> {
+                        out.writeByte(tile.build.version());
+                        tile.build.writeAll(Writes.get(out));
+                    });
+                }else{
+                    stream.writeBoolean(false);
+                }
+            }else if(savedata){
+                stream.writeByte(tile.data);
+            }else{
+                //write consecutive non-entity blocks
+                int consecutives = 0;
+
+                for(int j = i + 1; j < total && consecutives < 255; j++){
+                    Tile nextTile = world.rawTile(x + j % w, y + j / w);
+
+                    if(nextTile.blockID() != tile.blockID()){
+                        break;
+                    }
+
+                    consecutives++;
+                }
+
+                stream.writeByte(consecutives);
+                i += consecutives;
+            }
+        }
+    }
+
+    void readRegionFloors(DataInput stream, WorldContext context, int x, int y, int w, int h) throws IOException{
+        int total = w * h;
+
+        for(int i = 0; i < total; i++){
+            short floorid = stream.readShort();
+            short oreid = stream.readShort();
+            int consecutives = stream.readUnsignedByte();
+            if(content.block(floorid) == Blocks.air) floorid = Blocks.stone.id;
+
+            for(int j = i; j <= i + consecutives; j++){
+                context.create(x + j % w, y + j / w, floorid, oreid, (short)0);
+            }
+
+            i += consecutives;
+        }
+    }
+
+    void readRegionBlocks(DataInput stream, WorldContext context, int width, int x, int y, int w, int h) throws IOException{
+        int total = w * h;
+
+        for(int i = 0; i < total; i++){
+            Block block = content.block(stream.readShort());
+            Tile tile = context.tile(x + i % w + (y + i / w) * width);
+            if(block == null) block = Blocks.air;
+            boolean isCenter = true;
+            byte packedCheck = stream.readByte();
+            boolean hadEntity = (packedCheck & 1) != 0;
+            boolean hadData = (packedCheck & 2) != 0;
+
+            if(hadEntity){
+                isCenter = stream.readBoolean();
+            }
+
+            //set block only if this is the center; otherwise, it's handled elsewhere
+            if(isCenter){
+                tile.setBlock(block);
+            }
+
+            if(hadEntity){
+                if(isCenter){ //only read entity for center blocks
+                    if(block.hasBuilding()){
+                        try{
+                            readChunk(stream, true, in -> {
+                                byte revision = in.readByte();
+                                tile.build.readAll(Reads.get(in), revision);
+                            });
+                        }catch(Throwable e){
+                            throw new IOException("Failed to read tile entity of block: " + block, e);
+                        }
+                    }else{
+                        //skip the entity region, as the entity and its IO code are now gone
+                        skipChunk(stream, true);
+                    }
+
+                    context.onReadBuilding();
+                }
+            }else if(hadData){
+                tile.setBlock(block);
+                tile.data = stream.readByte();
+            }else{
+                int consecutives = stream.readUnsignedByte();
+
+                for(int j = i + 1; j < i + 1 + consecutives; j++){
+                    context.tile(x + j % w + (y + j / w) * width).setBlock(block);
+                }
+
+                i += consecutives;
+            }
+        }
+    }
+}
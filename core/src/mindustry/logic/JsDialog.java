@@ -135,6 +135,13 @@ public class JsDialog extends BaseDialog {
             setupControlButtons();
         }).disabled(t -> net.active());
 
+        controlButtons.button(b -> {
+            b.label(() -> executor == null ? "" : Core.bundle.get("js.mode." + executor.mode.name()));
+        }, () -> {
+            // configured through the building, so that the mode is saved and synced with the server
+            executor.build.configure(executor.mode != JsExecutor.Mode.run);
+        }).disabled(t -> executor == null || executor.build == null);
+
         controlButtons.button("@variables", Icon.menu, () -> {
             BaseDialog dialog = new BaseDialog("@variables");
             dialog.hidden(() -> {
@@ -2,7 +2,11 @@ package mindustry.logic;
 
 import java.io.*;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.LockSupport;
 import java.util.regex.Pattern;
 
 import arc.*;
@@ -12,6 +16,7 @@ import arc.util.*;
 
 import mindustry.game.Team;
 import mindustry.gen.*;
+import mindustry.world.blocks.logic.LogicBlock.*;
 import mindustry.world.meta.BlockFlag;
 
 import org.mozilla.javascript.ClassShutter;
@@ -20,6 +25,7 @@ import org.mozilla.javascript.NativeJavaObject;
 import org.mozilla.javascript.WrapFactory;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.Function;
+import org.mozilla.javascript.Script;
 import org.mozilla.javascript.FunctionObject;
 import org.mozilla.javascript.Scriptable;
 import org.mozilla.javascript.ScriptableObject;
@@ -28,15 +34,49 @@ import org.mozilla.javascript.debug.DebuggableScript;
 import org.mozilla.javascript.debug.Debugger;
 
 public class JsExecutor extends LExecutor implements Debugger {
+    /**
+     * How long {@link #runOnce()} waits for the script to yield. A step that takes longer, e.g. in a slow native call, keeps running in the background,
+     * but can't touch game state until it is granted the next step. The update thread therefore waits at most this long per processor.
+     */
+    public static long maxStepWaitNanos = Time.millisToNanos(5);
+    /** Rhino instructions a single step of {@link Mode#debug} may take without yielding. Scripts that exceed it are stopped. */
+    public static int maxStepInstructions = 100000;
+    /** Rhino instructions granted per logic instruction of {@link LogicBuild#ipt} in {@link Mode#run}. */
+    public static int runInstructionScale = 100;
+    /** Maximum amount of distinct compiled scripts kept in {@link #scriptCache}. */
+    public static int maxCachedScripts = 256;
+    /** Compiled scripts shared by all executors, keyed by sandbox options and secured source. Least recently used scripts are evicted first. */
+    private static final LinkedHashMap<String, Script> scriptCache = new LinkedHashMap<String, Script>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Script> eldest) {
+            return size() > maxCachedScripts;
+        }
+    };
+    /** Creates script threads. Virtual threads are used when the runtime supports them, daemon platform threads otherwise. */
+    private static final ThreadFactory scriptThreads = createThreadFactory();
+
+    /** How the script is stepped. Changes take effect on the next {@link #load(LAssembler)}. */
+    public Mode mode = Mode.debug;
     public Context context;
     public Scriptable scope;
     public String code;
     public String securedCode;
     private boolean isInitialized;
-    private boolean isRunning = false;
-    private Thread executionThread;
-    public final Object singleStepLock = new Object();
-    public boolean stopExecution = false;
+    private volatile boolean isRunning = false;
+    /** True once the script thread compiled the script and waits for its first step, so compilation doesn't count towards {@link #maxStepWaitNanos}. */
+    private volatile boolean isReady = false;
+    private volatile Thread executionThread;
+    /** True while the script thread owns the current step; the script flips it back when it yields. */
+    private volatile boolean stepping = false;
+    /** Thread waiting in {@link #runOnce()} for the current step to finish. */
+    private volatile Thread caller;
+    /** Incremented whenever a step is granted or given up by {@link #runOnce()}. */
+    private volatile int stepId;
+    /** Step the script thread runs in. Game state may only be touched while it equals {@link #stepId}. */
+    private int ownedStep;
+    /** Rhino instructions the script thread executed in its current step. */
+    private int stepInstructions;
+    public volatile boolean stopExecution = false;
     private int currentLineNumber = 1;
     public String consoleLog = "";
     public Cons<String> consoleListener;
@@ -67,27 +107,31 @@ public class JsExecutor extends LExecutor implements Debugger {
         instructions = LAssembler.assemble("ubind", false).instructions;
 
         // stop execution thread, if already running
-        if (executionThread != null) {
+        Thread previous = executionThread;
+        if (previous != null) {
             stopExecution = true;
             if(isRunning){
-                executionThread.interrupt();
-                long timeOut = Time.millis() + 10;
-                while (isRunning && timeOut < Time.millis()){
-                    try{
-                        Thread.sleep(1);
-                    }catch(InterruptedException e){}
-                }
+                LockSupport.unpark(previous);
+                previous.interrupt();
+                try{
+                    previous.join(10);
+                }catch(InterruptedException e){}
             }
         }
 
         if (isInitialized) {
             stopExecution = false;
+            stepping = false;
+            isReady = false;
             isRunning = true;
-            executionThread = new Thread(() -> {
-                initializeContext(); // Initialize the context and start the script
+            executionThread = scriptThreads.newThread(() -> {
                 try {
+                    initializeContext(); // Initialize the context and start the script
+                    Script script = compileScript();
+                    isReady = true;
+                    awaitStep();
                     while (!stopExecution){
-                        context.evaluateString(scope, this.securedCode, "script", 1, null);
+                        script.exec(context, scope);
                     }
                     console.log("stop execution");
                 } catch (Error e) {
@@ -102,13 +146,54 @@ public class JsExecutor extends LExecutor implements Debugger {
                 } finally {
                     console.log("Context closed.");
                     cleanupContext(); // Ensure context cleanup on script completion
-                    isRunning = false;
+                    // a reload may already have started a new thread for this executor
+                    if (executionThread == Thread.currentThread()) {
+                        isRunning = false;
+                        stepping = false;
+                        Thread waiting = caller;
+                        if (waiting != null) LockSupport.unpark(waiting);
+                    }
                 }
             });
             executionThread.start();
         }
     }
 
+    // processors pasted from schematics usually share their code, so compile each source only once
+    private Script compileScript() {
+        String key = mode.name() + (OS.isAndroid ? ":interpreted\n" : "\n") + securedCode;
+        Script script;
+        synchronized (scriptCache) {
+            script = scriptCache.get(key);
+        }
+        if (script != null) {
+            return script;
+        }
+
+        // compiled outside the lock so other processors aren't blocked; racing compiles of the same source keep the first result
+        script = context.compileString(securedCode, "script", 1, null);
+        synchronized (scriptCache) {
+            Script existing = scriptCache.putIfAbsent(key, script);
+            return existing != null ? existing : script;
+        }
+    }
+
+    private static ThreadFactory createThreadFactory(){
+        try{
+            // Thread.ofVirtual() only exists on Java 21+, so it has to be looked up reflectively
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "JS Processor ", 0L);
+            return (ThreadFactory)builderType.getMethod("factory").invoke(builder);
+        }catch(Throwable ignored){
+            return r -> {
+                Thread thread = new Thread(r, "JS Processor");
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+    }
+
     // Makes the script cooperative
     public void createSecuredCode(String code) {        
         // yield while(1); 
@@ -126,35 +211,95 @@ public class JsExecutor extends LExecutor implements Debugger {
     }
 
     // Executes exactly one line of code
+    // hands the step to the script thread and parks until it yields back
     @Override
     public void runOnce() {
-        if (!isInitialized) {
+        if (!isInitialized || !isRunning || !isReady) {
             return;
         }
         if (sleepUntil > Time.nanos()) {
             return;
         }
-        synchronized (singleStepLock) {
-            singleStepLock.notify(); // Resume the paused thread
+
+        caller = Thread.currentThread();
+        stepId++;
+        stepping = true;
+        LockSupport.unpark(executionThread);
+
+        long deadline = System.nanoTime() + maxStepWaitNanos;
+        while (stepping && isRunning) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                // give up the step without stopping the script, it continues once it is granted the next one
+                stepId++;
+                stepping = false;
+                break;
+            }
+            LockSupport.parkNanos(this, remaining);
+        }
+
+        // in run mode a single step consumes the budget of the whole tick
+        if (mode == Mode.run) {
+            yield = true;
         }
     }
 
-    // will be called from the script thread eg. via cpu.yield()
+    // will be called from the script thread eg. via cpu.yield(), which precedes every access to game state
     public void sendToYield() {
         if (stopExecution) {
             throw new Error("Script execution aborted");
         }
-        synchronized (singleStepLock) {
-            try {
-                singleStepLock.wait();
-            } catch (InterruptedException e) {
-                if (consoleListener != null) 
-                    consoleListener.get("Error from yield");
-                e.printStackTrace();                
-            }catch(Throwable e){
-                console.log("yield: some error");
+        if (ownStep()) {
+            return;
+        }
+        // in run mode only the instruction budget or a sleep ends the step
+        if (mode == Mode.run && sleepUntil <= Time.nanos()) {
+            return;
+        }
+        handBack();
+    }
+
+    // ends the current step and parks until the next one
+    private void handBack() {
+        stepping = false;
+        Thread waiting = caller;
+        if (waiting != null) {
+            LockSupport.unpark(waiting);
+        }
+        awaitStep();
+    }
+
+    // waits for the next step if runOnce() gave up the current one while the script was busy
+    // returns true if the script continues in a new step
+    private boolean ownStep() {
+        if (ownedStep == stepId) {
+            return false;
+        }
+        awaitStep();
+        return true;
+    }
+
+    // parks the script thread until runOnce() grants the next step
+    private void awaitStep() {
+        while (!stepping && !stopExecution) {
+            LockSupport.park(this);
+            if (Thread.interrupted()) {
+                stopExecution = true;
             }
         }
+        if (stopExecution) {
+            throw new Error("Script execution aborted");
+        }
+        ownedStep = stepId;
+        stepInstructions = 0;
+        if (mode == Mode.run && context != null) {
+            // ipt of privileged processors can change between ticks
+            context.setInstructionObserverThreshold(stepBudget());
+        }
+    }
+
+    private int stepBudget() {
+        return Math.max(build != null ? build.ipt : 1, 1) * runInstructionScale;
     }
 
     // Returns if the executor is initialized with code
@@ -221,18 +366,49 @@ public class JsExecutor extends LExecutor implements Debugger {
         }
     }
 
+    // Counts instructions, handing back control once the tick's budget is spent in run mode,
+    // and stopping scripts that don't yield in debug mode
+    private class BudgetContextFactory extends ContextFactory {
+        @Override
+        protected void observeInstructionCount(Context cx, int instructionCount) {
+            if (stopExecution) {
+                throw new Error("Script execution aborted");
+            }
+            if (ownStep()) {
+                return;
+            }
+            if (mode == Mode.run) {
+                handBack();
+                return;
+            }
+            stepInstructions += instructionCount;
+            if (stepInstructions > maxStepInstructions) {
+                stopExecution = true;
+                console.log("Step took more than " + maxStepInstructions + " instructions, script stopped.");
+                throw new Error("Script execution aborted");
+            }
+        }
+    }
+
     // Initializes the context and attaches the debugger
     private void initializeContext() {
-        ContextFactory sandboxFactory = new ContextFactory();
+        console = new Console();
+        ContextFactory sandboxFactory = new BudgetContextFactory();
         context = sandboxFactory.enterContext();
         // context = Context.enter();
-        context.setOptimizationLevel(-1); // Run in interpreted mode for easier debugging
-        context.setInstructionObserverThreshold(1);
-        context.setGeneratingDebug(true);
-        context.setDebugger(this, null);
+        if (mode == Mode.debug) {
+            context.setOptimizationLevel(-1); // Run in interpreted mode for easier debugging
+            context.setInstructionObserverThreshold(1);
+            context.setGeneratingDebug(true);
+            context.setDebugger(this, null);
+        } else {
+            // classes cannot be generated at runtime on Android, the interpreter counts instructions as well
+            context.setOptimizationLevel(OS.isAndroid ? -1 : 9);
+            context.setGenerateObserverCount(true);
+            context.setInstructionObserverThreshold(stepBudget());
+        }
         scope = context.initStandardObjects();
         
-        console = new Console();
         mindustry = new JsWrapper(this, console, scope);
     }
 
@@ -269,6 +445,7 @@ public class JsExecutor extends LExecutor implements Debugger {
 
         @Override
         public void onLineChange(Context cx, int lineNumber) {
+            executor.ownStep();
             executor.counter.numval = lineNumber;
             executor.currentLineNumber = lineNumber;
             console.log("onLineChange line " + lineNumber);
@@ -276,14 +453,7 @@ public class JsExecutor extends LExecutor implements Debugger {
                 console.log("From fhread: Stop execution.");
                 throw new Error("Script execution aborted");
             }
-            synchronized (executor.singleStepLock) {
-                try {
-                    executor.singleStepLock.wait();
-                } catch (InterruptedException e) {
-                    console.log("From thread: interruptd detected.");
-                    throw new Error("Script execution aborted");
-                }
-            }
+            executor.sendToYield();
         }
 
         @Override
@@ -315,6 +485,13 @@ public class JsExecutor extends LExecutor implements Debugger {
         }
     }
 
+    public enum Mode {
+        /** Interpreted, pauses on every source line. */
+        debug,
+        /** Compiled, runs a budget of instructions derived from {@link LogicBuild#ipt} per tick. */
+        run
+    }
+
     public class Console {
         private StringBuilder logContent;
 
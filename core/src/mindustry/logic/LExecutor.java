@@ -20,6 +20,7 @@ import mindustry.game.MapObjectives.*;
 import mindustry.game.Teams.*;
 import mindustry.gen.*;
 import mindustry.logic.LogicFx.*;
+import mindustry.net.Administration.*;
 import mindustry.type.*;
 import mindustry.ui.*;
 import mindustry.world.*;
@@ -43,6 +44,8 @@ public class LExecutor{
     maxTextBuffer = 400;
 
     public LInstruction[] instructions = {};
+    /** Compiled form of {@link #instructions}; null when compilation is disabled. */
+    public @Nullable LProgram program;
     /** Non-constant variables used for network sync */
     public LVar[] vars = {};
     
@@ -90,6 +93,22 @@ public class LExecutor{
         }
     }
 
+    /** Runs up to {@code budget} instructions, stopping early on yield. @return the amount of instructions run. */
+    public int runBatch(int budget){
+        return program != null ? program.run(this, budget) : runInterpreted(budget);
+    }
+
+    /** Runs up to {@code budget} instructions through {@link #runOnce()}, stopping early on yield. */
+    public int runInterpreted(int budget){
+        int ran = 0;
+        while(ran < budget){
+            runOnce();
+            ran++;
+            if(yield) break;
+        }
+        return ran;
+    }
+
     /** Loads with a specified assembler. Resets all variables. */
     public void load(LAssembler builder){
         vars = builder.vars.values().toSeq().retainAll(var -> !var.constant).toArray(LVar.class);
@@ -102,6 +121,10 @@ public class LExecutor{
         unit = builder.getVar("@unit");
         thisv = builder.getVar("@this");
         ipt = builder.putConst("@ipt", build != null ? build.ipt : 0);
+        program = Config.compileLogic.bool() ? LProgram.compile(this) : null;
+        if(program != null){
+            program.tiered = LJit.supported && Config.jitLogic.bool();
+        }
     }
 
     //region utility
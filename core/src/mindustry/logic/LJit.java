@@ -0,0 +1,268 @@
+package mindustry.logic;
+
+import arc.util.*;
+import mindustry.logic.LExecutor.*;
+import org.mozilla.classfile.*;
+
+/**
+ * Second execution tier for processors. Once an {@link LProgram} has run {@link #hotThreshold} instructions, it is translated
+ * into a generated class that runs the program as straight-line bytecode, one block per instruction.
+ * Every generated class gets its own class loader, so it is unloaded together with its program.
+ * Instructions without a dedicated translation run through their {@link LInstruction}; any @counter value they leave behind
+ * is resolved through a table switch, and fractional values are handed to the interpreter.
+ */
+public class LJit{
+    /** Android and iOS cannot load bytecode at runtime. */
+    public static final boolean supported = !OS.isAndroid && !OS.isIos;
+    /** Instructions a program has to run before it gets translated. */
+    public static long hotThreshold = 100_000;
+    /**
+     * Maximum bytecode length of the generated method. Programs that don't fit are not translated,
+     * as HotSpot never compiles methods above its HugeMethodLimit of 8000 bytes, and interpreted bytecode is slower than {@link LProgram}.
+     */
+    public static int maxMethodLength = 7999;
+    /** Lower bound of the bytecode emitted for an instruction: its table switch entry and the budget check. */
+    static final int minInstructionLength = 18;
+
+    private static final String
+    superName = "mindustry.logic.LJit$Compiled",
+    superType = "mindustry/logic/LJit$Compiled",
+    jitType = "mindustry/logic/LJit",
+    programType = "mindustry/logic/LProgram",
+    executorType = "mindustry/logic/LExecutor",
+    varType = "mindustry/logic/LVar",
+    instructionType = "mindustry/logic/LExecutor$LInstruction",
+    executorDesc = "Lmindustry/logic/LExecutor;",
+    varDesc = "Lmindustry/logic/LVar;";
+
+    //local variable slots of the generated run method
+    private static final int
+    localExec = 1,
+    localBudget = 2,
+    localRan = 3,
+    localPc = 4,
+    localCounter = 5,
+    localRegs = 6,
+    localInstructions = 7;
+
+    private static int lastId;
+
+    /** @return the translated program, or null if it can't be translated on this platform. */
+    public static @Nullable Compiled compile(LProgram program){
+        int len = program.instructions.length;
+        if(!supported || len == 0 || len * minInstructionLength > maxMethodLength) return null;
+
+        try{
+            String name = "mindustry.logic.jit.Program" + (lastId++);
+            byte[] bytes = generate(name, program);
+            if(bytes == null) return null;
+            Compiled compiled = (Compiled)new JitLoader().define(name, bytes).getDeclaredConstructor().newInstance();
+            compiled.regs = program.regs;
+            compiled.instructions = program.instructions;
+            return compiled;
+        }catch(Throwable e){
+            Log.err("Failed to translate processor program", e);
+            return null;
+        }
+    }
+
+    /** @return the current @counter as an instruction index, or {@link Integer#MIN_VALUE} if it can't be represented as one. */
+    public static int counter(LExecutor exec){
+        double value = exec.counter.numval;
+        int pc = (int)value;
+        return pc == value ? pc : Integer.MIN_VALUE;
+    }
+
+    /** @return the class file of the translated program, or null if its run method would exceed {@link #maxMethodLength}. */
+    public static @Nullable byte[] generate(String name, LProgram program){
+        LInstruction[] instructions = program.instructions;
+        int len = instructions.length;
+        ClassFileWriter cfw = new ClassFileWriter(name, superName, "<processor>");
+
+        cfw.startMethod("<init>", "()V", ClassFileWriter.ACC_PUBLIC);
+        cfw.addLoadThis();
+        cfw.addInvoke(ByteCode.INVOKESPECIAL, superType, "<init>", "()V");
+        cfw.add(ByteCode.RETURN);
+        cfw.stopMethod((short)1);
+
+        cfw.startMethod("run", "(" + executorDesc + "I)I", ClassFileWriter.ACC_PUBLIC);
+
+        int[] labels = new int[len + 1];
+        for(int i = 0; i <= len; i++){
+            labels[i] = cfw.acquireLabel();
+        }
+        int dispatch = cfw.acquireLabel(), exit = cfw.acquireLabel();
+
+        cfw.addPush(0);
+        cfw.addIStore(localRan);
+        cfw.addALoad(localExec);
+        cfw.add(ByteCode.GETFIELD, executorType, "counter", varDesc);
+        cfw.addAStore(localCounter);
+        cfw.addLoadThis();
+        cfw.add(ByteCode.GETFIELD, superType, "regs", "[" + varDesc);
+        cfw.addAStore(localRegs);
+        cfw.addLoadThis();
+        cfw.add(ByteCode.GETFIELD, superType, "instructions", "[L" + instructionType + ";");
+        cfw.addAStore(localInstructions);
+        cfw.addALoad(localExec);
+        cfw.addInvoke(ByteCode.INVOKESTATIC, jitType, "counter", "(" + executorDesc + ")I");
+        cfw.addIStore(localPc);
+        cfw.addILoad(localPc);
+        cfw.addPush(Integer.MIN_VALUE);
+        cfw.add(ByteCode.IF_ICMPNE, dispatch);
+        //fractional counters are left to the interpreter
+        cfw.addALoad(localExec);
+        cfw.addILoad(localBudget);
+        cfw.addInvoke(ByteCode.INVOKEVIRTUAL, executorType, "runInterpreted", "(I)I");
+        cfw.add(ByteCode.IRETURN);
+
+        //resolves the instruction index in localPc, wrapping around like LExecutor#runOnce
+        cfw.markLabel(dispatch);
+        cfw.addILoad(localRan);
+        cfw.addILoad(localBudget);
+        cfw.add(ByteCode.IF_ICMPGE, exit);
+        cfw.addILoad(localPc);
+        int table = cfw.addTableSwitch(0, len - 1);
+        cfw.markTableSwitchDefault(table);
+        cfw.add(ByteCode.GOTO, labels[0]);
+
+        for(int i = 0; i < len; i++){
+            LInstruction inst = instructions[i];
+            int body = cfw.acquireLabel();
+
+            cfw.markLabel(labels[i]);
+            cfw.markTableSwitchCase(table, i);
+            cfw.addILoad(localRan);
+            cfw.addILoad(localBudget);
+            cfw.add(ByteCode.IF_ICMPLT, body);
+            cfw.addPush(i);
+            cfw.addIStore(localPc);
+            cfw.add(ByteCode.GOTO, exit);
+            cfw.markLabel(body);
+            cfw.add(ByteCode.IINC, localRan, 1);
+
+            if(inst instanceof SetI set && LProgram.compilable(program.counter, set)){
+                loadReg(cfw, program, set.from);
+                loadReg(cfw, program, set.to);
+                cfw.addInvoke(ByteCode.INVOKESTATIC, programType, "set", "(" + varDesc + varDesc + ")V");
+            }else if(inst instanceof OpI op && LProgram.compilable(program.counter, op)){
+                cfw.add(ByteCode.GETSTATIC, "mindustry/logic/LogicOp", op.op.name(), "Lmindustry/logic/LogicOp;");
+                loadReg(cfw, program, op.a);
+                loadReg(cfw, program, op.b);
+                loadReg(cfw, program, op.dest);
+                cfw.addInvoke(ByteCode.INVOKESTATIC, programType, "op", "(Lmindustry/logic/LogicOp;" + varDesc + varDesc + varDesc + ")V");
+            }else if(inst instanceof JumpI jump && LProgram.compilable(program.counter, jump)){
+                if(jump.address == -1){
+                    //never jumps
+                }else if(jump.op == ConditionOp.always){
+                    jumpTo(cfw, labels, dispatch, jump.address);
+                }else{
+                    int skip = cfw.acquireLabel();
+                    cfw.add(ByteCode.GETSTATIC, "mindustry/logic/ConditionOp", jump.op.name(), "Lmindustry/logic/ConditionOp;");
+                    loadReg(cfw, program, jump.value);
+                    loadReg(cfw, program, jump.compare);
+                    cfw.addInvoke(ByteCode.INVOKESTATIC, programType, "jump", "(Lmindustry/logic/ConditionOp;" + varDesc + varDesc + ")Z");
+                    cfw.add(ByteCode.IFEQ, skip);
+                    jumpTo(cfw, labels, dispatch, jump.address);
+                    cfw.markLabel(skip);
+                }
+            }else if(!(inst instanceof NoopI)){
+                //run the instruction itself, with the same counter value the interpreter would have
+                int resume = cfw.acquireLabel(), integral = cfw.acquireLabel();
+
+                cfw.addALoad(localCounter);
+                cfw.addPush((double)(i + 1));
+                cfw.add(ByteCode.PUTFIELD, varType, "numval", "D");
+                cfw.addALoad(localInstructions);
+                cfw.addPush(i);
+                cfw.add(ByteCode.AALOAD);
+                cfw.addALoad(localExec);
+                cfw.addInvoke(ByteCode.INVOKEINTERFACE, instructionType, "run", "(" + executorDesc + ")V");
+
+                //yielding ends the batch; the instruction has already set the counter
+                cfw.addALoad(localExec);
+                cfw.add(ByteCode.GETFIELD, executorType, "yield", "Z");
+                cfw.add(ByteCode.IFEQ, resume);
+                cfw.addILoad(localRan);
+                cfw.add(ByteCode.IRETURN);
+
+                cfw.markLabel(resume);
+                cfw.addALoad(localExec);
+                cfw.addInvoke(ByteCode.INVOKESTATIC, jitType, "counter", "(" + executorDesc + ")I");
+                cfw.addIStore(localPc);
+                cfw.addILoad(localPc);
+                cfw.addPush(Integer.MIN_VALUE);
+                cfw.add(ByteCode.IF_ICMPNE, integral);
+                cfw.addILoad(localRan);
+                cfw.addALoad(localExec);
+                cfw.addILoad(localBudget);
+                cfw.addILoad(localRan);
+                cfw.add(ByteCode.ISUB);
+                cfw.addInvoke(ByteCode.INVOKEVIRTUAL, executorType, "runInterpreted", "(I)I");
+                cfw.add(ByteCode.IADD);
+                cfw.add(ByteCode.IRETURN);
+
+                cfw.markLabel(integral);
+                cfw.addILoad(localPc);
+                cfw.addPush(i + 1);
+                cfw.add(ByteCode.IF_ICMPEQ, labels[i + 1]);
+                cfw.add(ByteCode.GOTO, dispatch);
+            }
+        }
+
+        //ran past the last instruction
+        cfw.markLabel(labels[len]);
+        cfw.addPush(len);
+        cfw.addIStore(localPc);
+        cfw.add(ByteCode.GOTO, dispatch);
+
+        cfw.markLabel(exit);
+        cfw.addALoad(localCounter);
+        cfw.addILoad(localPc);
+        cfw.add(ByteCode.I2D);
+        cfw.add(ByteCode.PUTFIELD, varType, "numval", "D");
+        cfw.addILoad(localRan);
+        cfw.add(ByteCode.IRETURN);
+
+        if(cfw.getCurrentCodeOffset() > maxMethodLength) return null;
+        cfw.stopMethod((short)(localInstructions + 1));
+
+        return cfw.toByteArray();
+    }
+
+    static void loadReg(ClassFileWriter cfw, LProgram program, LVar var){
+        cfw.addALoad(localRegs);
+        cfw.addPush(program.reg(var));
+        cfw.add(ByteCode.AALOAD);
+    }
+
+    static void jumpTo(ClassFileWriter cfw, int[] labels, int dispatch, int address){
+        if(address >= 0 && address < labels.length - 1){
+            cfw.add(ByteCode.GOTO, labels[address]);
+        }else{
+            //out of range; the counter keeps the raw address until the next instruction wraps it around
+            cfw.addPush(address);
+            cfw.addIStore(localPc);
+            cfw.add(ByteCode.GOTO, dispatch);
+        }
+    }
+
+    /** Base class of generated programs. Must be public, as subclasses live in their own class loader. */
+    public static abstract class Compiled{
+        public LVar[] regs;
+        public LInstruction[] instructions;
+
+        /** Same contract as {@link LProgram#run(LExecutor, int)}. */
+        public abstract int run(LExecutor exec, int budget);
+    }
+
+    static class JitLoader extends ClassLoader{
+        JitLoader(){
+            super(LJit.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] bytes){
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package mindustry.logic;
+
+import arc.func.*;
+import arc.struct.*;
+import arc.util.*;
+import mindustry.logic.LExecutor.*;
+
+/**
+ * Assembled instructions lowered into a flat int array, executed by {@link LExecutor#runBatch(int)}.
+ * Operands are indices into {@link #regs}, which holds the executor's own variables, so network sync and saving always see current values.
+ * Jump targets are resolved at compile time, and op/set instructions followed by a jump are fused into a single dispatch.
+ * Every other instruction, as well as anything that reads or writes @counter, runs through its {@link LInstruction}.
+ */
+public class LProgram{
+    static final int
+    //pc
+    opFallback = 0,
+    //-
+    opNoop = 1,
+    //from, to
+    opSet = 2,
+    //op, a, b, dest
+    opOp = 3,
+    //cond, a, b, target
+    opJump = 4,
+    //target
+    opJumpAlways = 5,
+    //op, a, b, dest, cond, x, y, target
+    opOpJump = 6,
+    //from, to, cond, x, y, target
+    opSetJump = 7;
+
+    public final LInstruction[] instructions;
+    /** All variables referenced by compiled instructions. */
+    public final LVar[] regs;
+    /** The @counter variable of the executor this program was compiled for. */
+    public final LVar counter;
+    /** Lowered instructions. */
+    final int[] code;
+    /** Maps instruction index to its position in {@link #code}. */
+    final int[] offsets;
+    final ObjectIntMap<LVar> ids;
+
+    /** Whether this program gets translated by {@link LJit} once it is hot. */
+    public boolean tiered;
+    /** Translated form of this program, used instead of {@link #code} once available. */
+    public @Nullable LJit.Compiled jit;
+    /** Instructions run so far, used to detect hot programs. */
+    public long executed;
+
+    LProgram(LInstruction[] instructions, LVar[] regs, LVar counter, int[] code, int[] offsets, ObjectIntMap<LVar> ids){
+        this.instructions = instructions;
+        this.regs = regs;
+        this.counter = counter;
+        this.code = code;
+        this.offsets = offsets;
+        this.ids = ids;
+    }
+
+    public static LProgram compile(LExecutor exec){
+        LInstruction[] instructions = exec.instructions;
+        IntSeq code = new IntSeq();
+        Seq<LVar> regs = new Seq<>(LVar.class);
+        ObjectIntMap<LVar> ids = new ObjectIntMap<>();
+        int[] offsets = new int[instructions.length];
+
+        Intf<LVar> reg = var -> {
+            int id = ids.get(var, -1);
+            if(id == -1){
+                ids.put(var, id = regs.size);
+                regs.add(var);
+            }
+            return id;
+        };
+
+        for(int i = 0; i < instructions.length; i++){
+            offsets[i] = code.size;
+            LInstruction inst = instructions[i];
+            JumpI next = i + 1 < instructions.length && instructions[i + 1] instanceof JumpI j && compilable(exec.counter, j) && j.address != -1 ? j : null;
+
+            if(inst instanceof OpI op && compilable(exec.counter, op)){
+                code.addAll(next == null ? opOp : opOpJump, op.op.ordinal(), reg.get(op.a), reg.get(op.b), reg.get(op.dest));
+                if(next != null) code.addAll(next.op.ordinal(), reg.get(next.value), reg.get(next.compare), next.address);
+            }else if(inst instanceof SetI set && compilable(exec.counter, set)){
+                code.addAll(next == null ? opSet : opSetJump, reg.get(set.from), reg.get(set.to));
+                if(next != null) code.addAll(next.op.ordinal(), reg.get(next.value), reg.get(next.compare), next.address);
+            }else if(inst instanceof JumpI jump && compilable(exec.counter, jump)){
+                if(jump.address == -1){
+                    code.add(opNoop);
+                }else if(jump.op == ConditionOp.always){
+                    code.addAll(opJumpAlways, jump.address);
+                }else{
+                    code.addAll(opJump, jump.op.ordinal(), reg.get(jump.value), reg.get(jump.compare), jump.address);
+                }
+            }else if(inst instanceof NoopI){
+                code.add(opNoop);
+            }else{
+                code.addAll(opFallback, i);
+            }
+        }
+
+        return new LProgram(instructions, regs.toArray(LVar.class), exec.counter, code.toArray(), offsets, ids);
+    }
+
+    /** @return the index of a variable in {@link #regs}. */
+    public int reg(LVar var){
+        return ids.get(var, -1);
+    }
+
+    static boolean compilable(LVar counter, OpI i){
+        //rand shares its generator between all processors, which would make runPure order-dependent
+        return i.a != counter && i.b != counter && i.dest != counter && i.op != LogicOp.rand;
+    }
+
+    static boolean compilable(LVar counter, SetI i){
+        return i.from != counter && i.to != counter;
+    }
+
+    static boolean compilable(LVar counter, JumpI i){
+        return i.value != counter && i.compare != counter;
+    }
+
+    /** Runs up to {@code budget} instructions, stopping early on yield. @return the amount of instructions run. */
+    public int run(LExecutor exec, int budget){
+        if(jit != null) return jit.run(exec, budget);
+
+        int ran = runCode(exec, budget, false);
+        if(tiered && (executed += ran) >= LJit.hotThreshold){
+            tiered = false;
+            jit = LJit.compile(this);
+        }
+        return ran;
+    }
+
+    /**
+     * Runs compiled instructions only, stopping before the first one that has to go through its {@link LInstruction}.
+     * These only touch the executor's own variables, so different executors may run this concurrently.
+     * @return the amount of instructions run.
+     */
+    public int runPure(LExecutor exec, int budget){
+        return runCode(exec, budget, true);
+    }
+
+    /**
+     * Runs instructions that have to go through their {@link LInstruction}, stopping before the next one {@link #runPure(LExecutor, int)} can run, or on yield.
+     * @return the amount of instructions run.
+     */
+    public int runSerial(LExecutor exec, int budget){
+        int ran = 0;
+        while(ran < budget && !exec.yield && !pureAt(exec.counter.numval)){
+            exec.runOnce();
+            ran++;
+        }
+        return ran;
+    }
+
+    /** @return whether {@link #runPure(LExecutor, int)} can run the instruction at the specified counter. */
+    boolean pureAt(double counter){
+        int pc = (int)counter;
+        //fractional counters are left to the interpreter
+        if(pc != counter || offsets.length == 0) return false;
+        if(pc >= offsets.length || pc < 0) pc = 0;
+        return code[offsets[pc]] != opFallback;
+    }
+
+    int runCode(LExecutor exec, int budget, boolean pure){
+        LVar counter = exec.counter;
+        LVar[] regs = this.regs;
+        int[] code = this.code, offsets = this.offsets;
+        int len = offsets.length, ran = 0;
+
+        double start = counter.numval;
+        int pc = (int)start;
+        //fractional counters are left to the interpreter, which keeps the fraction around
+        if(pc != start) return pure ? 0 : exec.runInterpreted(budget);
+
+        while(ran < budget){
+            if(pc >= len || pc < 0) pc = 0;
+            int ip = offsets[pc];
+
+            switch(code[ip]){
+                case opFallback -> {
+                    if(pure){
+                        counter.numval = pc;
+                        return ran;
+                    }
+                    counter.numval = pc + 1;
+                    instructions[pc].run(exec);
+                    ran++;
+
+                    double next = counter.numval;
+                    pc = (int)next;
+                    if(exec.yield) return ran;
+                    if(pc != next) return ran + exec.runInterpreted(budget - ran);
+                }
+                case opNoop -> {
+                    ran++;
+                    pc++;
+                }
+                case opSet -> {
+                    set(regs[code[ip + 1]], regs[code[ip + 2]]);
+                    ran++;
+                    pc++;
+                }
+                case opOp -> {
+                    op(LogicOp.all[code[ip + 1]], regs[code[ip + 2]], regs[code[ip + 3]], regs[code[ip + 4]]);
+                    ran++;
+                    pc++;
+                }
+                case opJump -> {
+                    pc = jump(ConditionOp.all[code[ip + 1]], regs[code[ip + 2]], regs[code[ip + 3]]) ? code[ip + 4] : pc + 1;
+                    ran++;
+                }
+                case opJumpAlways -> {
+                    pc = code[ip + 1];
+                    ran++;
+                }
+                case opOpJump -> {
+                    op(LogicOp.all[code[ip + 1]], regs[code[ip + 2]], regs[code[ip + 3]], regs[code[ip + 4]]);
+                    pc++;
+                    if(++ran < budget){
+                        pc = jump(ConditionOp.all[code[ip + 5]], regs[code[ip + 6]], regs[code[ip + 7]]) ? code[ip + 8] : pc + 1;
+                        ran++;
+                    }
+                }
+                case opSetJump -> {
+                    set(regs[code[ip + 1]], regs[code[ip + 2]]);
+                    pc++;
+                    if(++ran < budget){
+                        pc = jump(ConditionOp.all[code[ip + 3]], regs[code[ip + 4]], regs[code[ip + 5]]) ? code[ip + 6] : pc + 1;
+                        ran++;
+                    }
+                }
+            }
+        }
+
+        counter.numval = pc;
+        return ran;
+    }
+
+    //the following must behave exactly like their respective LInstruction; public for LJit
+
+    public static void set(LVar from, LVar to){
+        if(!to.constant){
+            if(from.isobj){
+                to.objval = from.objval;
+                to.isobj = true;
+            }else{
+                to.numval = LVar.invalid(from.numval) ? 0 : from.numval;
+                to.isobj = false;
+            }
+        }
+    }
+
+    public static void op(LogicOp op, LVar a, LVar b, LVar dest){
+        if(op == LogicOp.strictEqual){
+            dest.setnum(a.isobj == b.isobj && ((a.isobj && Structs.eq(a.objval, b.objval)) || (!a.isobj && a.numval == b.numval)) ? 1 : 0);
+        }else if(op.unary){
+            dest.setnum(op.function1.get(a.num()));
+        }else if(op.objFunction2 != null && a.isobj && b.isobj){
+            dest.setnum(op.objFunction2.get(a.obj(), b.obj()));
+        }else{
+            double x = a.num(), y = b.num();
+            dest.setnum(switch(op){
+                case add -> x + y;
+                case sub -> x - y;
+                case mul -> x * y;
+                case div -> x / y;
+                case lessThan -> x < y ? 1 : 0;
+                case lessThanEq -> x <= y ? 1 : 0;
+                case greaterThan -> x > y ? 1 : 0;
+                case greaterThanEq -> x >= y ? 1 : 0;
+                default -> op.function2.get(x, y);
+            });
+        }
+    }
+
+    public static boolean jump(ConditionOp op, LVar va, LVar vb){
+        if(op == ConditionOp.strictEqual){
+            return va.isobj == vb.isobj && ((va.isobj && va.objval == vb.objval) || (!va.isobj && va.numval == vb.numval));
+        }else if(op.objFunction != null && va.isobj && vb.isobj){
+            return op.objFunction.get(va.obj(), vb.obj());
+        }else{
+            double x = va.num(), y = vb.num();
+            return switch(op){
+                case lessThan -> x < y;
+                case lessThanEq -> x <= y;
+                case greaterThan -> x > y;
+                case greaterThanEq -> x >= y;
+                default -> op.function.get(x, y);
+            };
+        }
+    }
+}
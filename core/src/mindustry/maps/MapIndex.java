@@ -0,0 +1,130 @@
+package mindustry.maps;
+
+import arc.files.*;
+import arc.struct.*;
+import arc.util.*;
+import arc.util.io.*;
+import mindustry.core.*;
+
+import java.io.*;
+import java.nio.file.*;
+
+/**
+ * Persistent index of map file metadata, so that only maps whose files changed since the last load have to be opened and inflated.
+ * Entries are keyed by absolute path, and are only valid as long as the size and modification time of their file stay the same.
+ */
+public class MapIndex{
+    static final int formatVersion = 1;
+
+    private final Fi file;
+    private final ObjectMap<String, Entry> entries = new ObjectMap<>();
+    private boolean changed;
+
+    public MapIndex(Fi file){
+        this.file = file;
+    }
+
+    /**
+     * Reads the index, replacing the current entries. An unreadable index is treated as empty.
+     * The file is closed before returning, so that {@link #write()} can replace it on every platform.
+     */
+    public void read(){
+        entries.clear();
+        changed = false;
+        if(!file.exists()) return;
+
+        try(DataInputStream input = new DataInputStream(file.read(Streams.defaultBufferSize))){
+            if(input.readInt() != formatVersion) return;
+
+            int amount = input.readInt();
+            for(int i = 0; i < amount; i++){
+                String path = input.readUTF();
+                Entry entry = new Entry(input.readLong(), input.readLong(), input.readInt());
+                int tags = input.readUnsignedShort();
+                for(int j = 0; j < tags; j++){
+                    entry.tags.put(input.readUTF(), input.readUTF());
+                }
+                entries.put(path, entry);
+            }
+        }catch(IOException | RuntimeException e){
+            Log.err("Failed to read map index, maps will be reloaded.", e);
+            entries.clear();
+        }
+    }
+
+    /** @return the indexed map of a file, or null if it is not indexed or the file changed since. */
+    public @Nullable Map get(Fi mapFile, boolean custom){
+        Entry entry = entries.get(mapFile.absolutePath());
+        if(entry == null || entry.length != mapFile.length() || entry.modified != mapFile.lastModified()) return null;
+
+        StringMap tags = new StringMap(entry.tags);
+        return new Map(mapFile, tags.getInt("width"), tags.getInt("height"), tags, custom, entry.version, Version.build);
+    }
+
+    /** Replaces the entries with the specified maps. */
+    public void set(Seq<Map> maps){
+        ObjectMap<String, Entry> previous = new ObjectMap<>(entries);
+        entries.clear();
+
+        for(Map map : maps){
+            String path = map.file.absolutePath();
+            Entry entry = previous.get(path);
+            long length = map.file.length(), modified = map.file.lastModified();
+
+            if(entry == null || entry.length != length || entry.modified != modified || entry.version != map.version || !entry.tags.equals(map.tags)){
+                entry = new Entry(length, modified, map.version);
+                entry.tags.putAll(map.tags);
+                changed = true;
+            }
+            entries.put(path, entry);
+        }
+
+        changed |= previous.size != entries.size;
+    }
+
+    /** Writes the index if it changed since it was read, replacing the previous file once it is complete. */
+    public void write(){
+        if(!changed) return;
+
+        Fi temp = file.sibling(file.name() + ".tmp");
+        try(DataOutputStream stream = new DataOutputStream(temp.write(false, Streams.defaultBufferSize))){
+            stream.writeInt(formatVersion);
+            stream.writeInt(entries.size);
+            for(var e : entries){
+                stream.writeUTF(e.key);
+                stream.writeLong(e.value.length);
+                stream.writeLong(e.value.modified);
+                stream.writeInt(e.value.version);
+                stream.writeShort(e.value.tags.size);
+                for(var tag : e.value.tags){
+                    stream.writeUTF(tag.key);
+                    stream.writeUTF(tag.value);
+                }
+            }
+        }catch(IOException e){
+            Log.err("Failed to write map index.", e);
+            temp.delete();
+            return;
+        }
+
+        try{
+            Files.move(temp.file().toPath(), file.file().toPath(), StandardCopyOption.REPLACE_EXISTING);
+            changed = false;
+        }catch(IOException e){
+            Log.err("Failed to replace map index.", e);
+            temp.delete();
+        }
+    }
+
+    static class Entry{
+        final long length, modified;
+        final int version;
+        final StringMap tags = new StringMap();
+
+        Entry(long length, long modified, int version){
+            this.length = length;
+            this.modified = modified;
+            this.version = version;
+        }
+    }
+}
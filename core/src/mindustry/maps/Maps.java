@@ -24,6 +24,7 @@ import mindustry.world.*;
 import mindustry.world.blocks.storage.*;
 
 import java.io.*;
+import java.util.concurrent.*;
 
 import static mindustry.Vars.*;
 
@@ -49,6 +50,8 @@ public class Maps{
     private @Nullable Map nextMapOverride;
 
     private ObjectSet<Map> previewList = new ObjectSet<>();
+    /** Metadata of custom maps from previous loads. */
+    private MapIndex index = new MapIndex(mapPreviewDirectory.child("map-index.dat"));
 
     public ShuffleMode getShuffleMode(){
         return shuffleMode;
@@ -133,17 +136,7 @@ public class Maps{
             throw new RuntimeException(e);
         }
 
-        //custom
-        for(Fi file : customMapDirectory.list()){
-            try{
-                if(file.extension().equalsIgnoreCase(mapExtension)){
-                    loadMap(file, true);
-                }
-            }catch(Exception e){
-                Log.err("Failed to load custom map file '@'!", file);
-                Log.err(e);
-            }
-        }
+        loadCustomMaps();
 
         //workshop
         for(Fi file : platform.getWorkshopContent(Map.class)){
@@ -171,6 +164,43 @@ public class Maps{
         });
     }
 
+    /** Loads custom maps, only reading the files that changed since they were last indexed, in parallel. */
+    private void loadCustomMaps(){
+        index.read();
+
+        Seq<Fi> files = new Seq<>();
+        Seq<Future<Map>> futures = new Seq<>();
+
+        for(Fi file : customMapDirectory.list()){
+            if(!file.extension().equalsIgnoreCase(mapExtension)) continue;
+
+            Map indexed = index.get(file, true);
+            files.add(file);
+            futures.add(indexed != null ? CompletableFuture.completedFuture(indexed) : mainExecutor.submit(() -> MapIO.createMap(file, true)));
+        }
+
+        Seq<Map> loaded = new Seq<>();
+        for(int i = 0; i < futures.size; i++){
+            try{
+                Map map = futures.get(i).get();
+
+                if(map.name() == null){
+                    throw new IOException("Map name cannot be empty! File: " + files.get(i));
+                }
+                loaded.add(map);
+            }catch(Exception e){
+                Log.err("Failed to load custom map file '@'!", files.get(i));
+                Log.err(e);
+            }
+        }
+
+        maps.addAll(loaded);
+        maps.sort();
+
+        index.set(loaded);
+        index.write();
+    }
+
     public void reload(){
         for(Map map : maps){
             if(map.texture != null){
@@ -515,7 +515,20 @@ public class Administration{
         snapshotInterval = new Config("snapshotInterval", "Client entity snapshot interval in ms.", 200),
         autoPause = new Config("autoPause", "Whether the game should pause when nobody is online.", false),
         roundExtraTime = new Config("roundExtraTime", "Time before loading a new map after the gameover, in seconds.", 12),
-        maxLogLength = new Config("maxLogLength", "The Maximum log file size, in bytes.", 1024 * 1024 * 5);
+        maxLogLength = new Config("maxLogLength", "The Maximum log file size, in bytes.", 1024 * 1024 * 5),
+        compileLogic = new Config("compileLogic", "Whether processor code is compiled into a compact form after assembly. Applies to processors loaded afterwards.", false),
+        jitLogic = new Config("jitLogic", "Whether frequently run processor programs are translated into JVM bytecode. Requires compileLogic.", false),
+        parallelLogic = new Config("parallelLogic", "Whether compiled processors run their side-effect free instructions in parallel after all buildings have updated. Requires compileLogic.", false),
+        physicsBroadphase = new Config("physicsBroadphase", "Broad phase used to find colliding units: 'quadtree' or 'grid'.", "quadtree"),
+        incrementalPathfinding = new Config("incrementalPathfinding", "Whether flow fields only search again around changed tiles, instead of across the whole map.", false),
+        compactFlowfields = new Config("compactFlowfields", "Whether flow fields store 16-bit weights in blocks that are only allocated where they are reached. Applies to flow fields created afterwards.", false),
+        deltaSnapshots = new Config("deltaSnapshots", "Whether entity snapshots are sent reliably and only contain entities that changed since the last snapshot, as differences to their previous state.", false),
+        interestManagement = new Config("interestManagement", "Whether units far away from a player's view are sent to them less often.", false),
+        interestMargin = new Config("interestMargin", "Distance around a player's view in which units are always sent, in tiles.", 20),
+        interestFarInterval = new Config("interestFarInterval", "With interestManagement, every how many snapshots units outside a player's view are sent, e.g. for the minimap. 0 to never send them.", 5),
+        asyncSaves = new Config("asyncSaves", "Whether autosaves are compressed and written to disk in the background instead of pausing the game.", false),
+        parallelWorldData = new Config("parallelWorldData", "Whether world data for joining players is compressed in parallel in the background instead of pausing the game.", false),
+        parallelBuildings = new Config("parallelBuildings", "Whether conveyors away from chunk borders are updated on multiple threads. Changes the order of building updates on the server only; clients keep the regular order, so their local conveyor simulation can briefly differ until blocks are synced.", false);
 
         public final Object defaultValue;
         public final String name, key, description;
@@ -390,6 +390,10 @@ public class ArcNetProvider implements NetProvider{
         ThreadLocal<ByteBuffer> decompressBuffer = Threads.local(() -> ByteBuffer.allocate(32768));
         ThreadLocal<Reads> reads = Threads.local(() -> new Reads(new ByteBufferInput(decompressBuffer.get())));
         ThreadLocal<Writes> writes = Threads.local(() -> new Writes(new ByteBufferOutput(decompressBuffer.get())));
+        /** Holds the bytes of serialized packets; shared by all serializers. */
+        public static final BufferPool pool = new BufferPool();
+        //holds packets while they are serialized ahead of time; large enough for the worst case of compressing a full decompress buffer
+        ThreadLocal<ByteBuffer> serializeBuffer = Threads.local(() -> ByteBuffer.allocate(32768 + 32768 / 255 + 64));
 
         //for debugging network write counts
         static WindowedMean upload = new WindowedMean(5), download = new WindowedMean(5);
@@ -450,6 +454,8 @@ public class ArcNetProvider implements NetProvider{
             //write raw buffer
             if(o instanceof ByteBuffer raw){
                 byteBuffer.put(raw);
+            }else if(o instanceof SerializedPacket packet){
+                byteBuffer.put(packet.data, 0, packet.length);
             }else if(o instanceof FrameworkMessage msg){
                 byteBuffer.put((byte)-2); //code for framework message
                 writeFramework(byteBuffer, msg);
@@ -493,6 +499,19 @@ public class ArcNetProvider implements NetProvider{
             }
         }
 
+        /** Serializes and compresses a packet once, so that it can be sent to several connections without doing so again. */
+        public SerializedPacket serialize(Packet packet){
+            var buffer = serializeBuffer.get();
+            buffer.position(0);
+            buffer.limit(buffer.capacity());
+            write(buffer, packet);
+
+            int length = buffer.position();
+            byte[] data = pool.obtain(length);
+            System.arraycopy(buffer.array(), 0, data, 0, length);
+            return new SerializedPacket(pool, data, length);
+        }
+
         public void writeFramework(ByteBuffer buffer, FrameworkMessage message){
             if(message instanceof Ping p){
                 buffer.put((byte)0);
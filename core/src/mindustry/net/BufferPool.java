@@ -0,0 +1,60 @@
+package mindustry.net;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * Byte arrays for network payloads, pooled by power-of-two size so that packets sent every update don't allocate.
+ * Arrays above {@link #maxPooled} bytes are allocated and dropped as usual. Thread-safe.
+ */
+public class BufferPool{
+    public static final int minShift = 6, maxShift = 16, maxPooled = 1 << maxShift;
+    /** Free arrays kept per size. */
+    static final int maxFree = 64;
+
+    private final byte[][][] free = new byte[maxShift - minShift + 1][maxFree][];
+    private final int[] freeCount = new int[maxShift - minShift + 1];
+
+    /** Counters, for watching allocations under load. */
+    public final AtomicLong obtained = new AtomicLong(), allocations = new AtomicLong(), allocatedBytes = new AtomicLong();
+
+    /** @return an array of at least the specified length; its contents are undefined. */
+    public byte[] obtain(int length){
+        obtained.incrementAndGet();
+
+        if(length <= maxPooled){
+            int bucket = bucket(length);
+            synchronized(this){
+                if(freeCount[bucket] > 0){
+                    int index = --freeCount[bucket];
+                    byte[] out = free[bucket][index];
+                    free[bucket][index] = null;
+                    return out;
+                }
+            }
+            length = 1 << (bucket + minShift);
+        }
+
+        allocations.incrementAndGet();
+        allocatedBytes.addAndGet(length);
+        return new byte[length];
+    }
+
+    /** Returns an array obtained from this pool. It must not be used afterwards. */
+    public void free(byte[] array){
+        int length = array.length;
+        //only exact power-of-two sizes come from this pool
+        if(length > maxPooled || length < (1 << minShift) || (length & (length - 1)) != 0) return;
+
+        int bucket = bucket(length);
+        synchronized(this){
+            if(freeCount[bucket] < maxFree){
+                free[bucket][freeCount[bucket]++] = array;
+            }
+        }
+    }
+
+    static int bucket(int length){
+        int shift = 32 - Integer.numberOfLeadingZeros(Math.max(length, 1) - 1);
+        return Math.max(shift, minShift) - minShift;
+    }
+}
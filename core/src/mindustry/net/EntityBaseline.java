@@ -0,0 +1,75 @@
+package mindustry.net;
+
+import arc.struct.*;
+import arc.util.*;
+import mindustry.gen.*;
+
+import java.io.*;
+
+/**
+ * The last synced state of entities, as written by {@code writeSync}, kept on both ends of a connection.
+ * Delta snapshots skip entities whose state matches it, and send the rest XORed with it, which compresses well since most bytes stay the same.
+ */
+public class EntityBaseline{
+    private final IntMap<byte[]> records = new IntMap<>();
+
+    /** @return the last record of an entity, or null if there is none. */
+    public @Nullable byte[] get(int id){
+        return records.get(id);
+    }
+
+    /** @return whether the stored record of an entity equals the specified bytes. */
+    public boolean matches(int id, byte[] data, int offset, int length){
+        byte[] record = records.get(id);
+        if(record == null || record.length != length) return false;
+
+        for(int i = 0; i < length; i++){
+            if(record[i] != data[offset + i]) return false;
+        }
+        return true;
+    }
+
+    /** @return an array for the next record of an entity, reusing the previous one if it has the same length. */
+    public byte[] obtain(int id, int length){
+        byte[] record = records.get(id);
+        if(record == null || record.length != length){
+            records.put(id, record = new byte[length]);
+        }
+        return record;
+    }
+
+    public void remove(int id){
+        records.remove(id);
+    }
+
+    /** Removes records of entities that are not synced anymore. */
+    public void prune(){
+        var it = records.keys();
+        while(it.hasNext){
+            if(Groups.sync.getByID(it.next()) == null) it.remove();
+        }
+    }
+
+    public int size(){
+        return records.size;
+    }
+
+    public void clear(){
+        records.clear();
+    }
+
+    /** Writes a record length in one byte if it is below 128, otherwise in three. */
+    public static void writeLength(DataOutput output, int length) throws IOException{
+        if(length < 0x80){
+            output.writeByte(length);
+        }else{
+            output.writeByte(0x80 | (length >>> 16));
+            output.writeShort(length & 0xffff);
+        }
+    }
+
+    public static int readLength(DataInput input) throws IOException{
+        int first = input.readUnsignedByte();
+        return first < 0x80 ? first : ((first & 0x7f) << 16) | input.readUnsignedShort();
+    }
+}
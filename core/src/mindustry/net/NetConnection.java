@@ -24,6 +24,8 @@ public abstract class NetConnection{
     public int lastReceivedClientSnapshot = -1;
     /** Count of snapshots sent from server. */
     public int snapshotsSent;
+    /** Entity states last sent to this connection, used for delta snapshots. */
+    public final EntityBaseline baseline = new EntityBaseline();
     /** Timestamp of last received snapshot. */
     public long lastReceivedClientTime;
     /** Build requests that have been recently rejected. This is cleared every snapshot. */
@@ -104,8 +106,12 @@ public abstract class NetConnection{
             send(begin, true);
             cid = begin.id;
 
+            //sends are serialized right away, so every full chunk can share an array
+            byte[] full = null;
+
             while(stream.stream.available() > 0){
-                byte[] bytes = new byte[Math.min(maxTcpSize, stream.stream.available())];
+                int length = Math.min(maxTcpSize, stream.stream.available());
+                byte[] bytes = length == maxTcpSize ? (full == null ? full = new byte[maxTcpSize] : full) : new byte[length];
                 stream.stream.read(bytes);
 
                 StreamChunk chunk = new StreamChunk();
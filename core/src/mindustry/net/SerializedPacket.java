@@ -0,0 +1,39 @@
+package mindustry.net;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * A packet that was already serialized and compressed by {@link ArcNetProvider.PacketSerializer}.
+ * Sending one of these only copies its bytes to the connection, so the same instance can be sent to any number of connections.
+ * The bytes come from a {@link BufferPool}: every owner calls {@link #release()} once done, which returns them after the last one.
+ */
+public class SerializedPacket{
+    /** Serialized bytes, including the packet ID and length. Must not be modified. */
+    public final byte[] data;
+    public final int length;
+
+    private final BufferPool pool;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    public SerializedPacket(BufferPool pool, byte[] data, int length){
+        this.pool = pool;
+        this.data = data;
+        this.length = length;
+    }
+
+    /** Adds an owner, which needs to release this as well. */
+    public SerializedPacket retain(){
+        references.incrementAndGet();
+        return this;
+    }
+
+    /** Removes an owner. Sends are copied right away, so this can be called as soon as this has been sent to every connection. */
+    public void release(){
+        int left = references.decrementAndGet();
+        if(left == 0){
+            pool.free(data);
+        }else if(left < 0){
+            throw new IllegalStateException("Packet released too often.");
+        }
+    }
+}
@@ -303,6 +303,7 @@ public class SettingsMenuDialog extends BaseDialog{
         sound.sliderPref("ambientvol", 100, 0, 100, 1, i -> i + "%");
 
         game.sliderPref("saveinterval", 60, 10, 5 * 120, 10, i -> Core.bundle.format("setting.seconds", i));
+        game.checkPref("asyncautosave", false);
 
         if(mobile){
             game.checkPref("autotarget", true);
@@ -90,6 +90,12 @@ public class Block extends UnlockableContent implements Senseable{
     public boolean clearOnDoubleTap = false;
     /** whether this block has a tile entity that updates */
     public boolean update;
+    /**
+     * whether buildings of this block may be updated on worker threads, see {@link mindustry.entities.ParallelUpdater}.
+     * Only enable this if updating modifies nothing but the building and its proximity, and creates no entities, effects or events.
+     * Off by default, so that modded blocks are always updated serially.
+     */
+    public boolean parallelUpdate = false;
     /** whether this block has health and can be destroyed */
     public boolean destructible;
     /** whether unloaders work on this block */
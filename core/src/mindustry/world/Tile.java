@@ -564,6 +564,8 @@ public class Tile implements Position, QuadTreeObject, Displayable{
         firePreChanged();
 
         if(build != null){
+            //sleeping buildings are out of their groups, so they have to be put back before they can be removed
+            build.noSleep();
             //only call removed() for the center block - this only gets called once.
             build.onRemoved();
             build.removeFromProximity();
@@ -81,6 +81,15 @@ public class LogicBlock extends Block {
             build.iconTag = data;
         });
 
+        // switches JS processors between run mode (true) and debug mode (false)
+        config(Boolean.class, (LogicBuild build, Boolean run) -> {
+            if (!accessible() || !(build.executor instanceof JsExecutor js))
+                return;
+
+            js.mode = run ? JsExecutor.Mode.run : JsExecutor.Mode.debug;
+            build.updateCode(build.code);
+        });
+
         config(Integer.class, (LogicBuild entity, Integer pos) -> {
             if (!accessible())
                 return;
@@ -565,12 +574,12 @@ public class LogicBlock extends Block {
                 if (accumulator > maxInstructionScale * ipt)
                     accumulator = maxInstructionScale * ipt;
 
-                for (int i = 0; i < (int) accumulator; i++) {
-                    executor.runOnce();
-                    accumulator--;
-                    if (executor.yield) {
+                if ((int) accumulator > 0) {
+                    if (executor.program != null && asyncCore.logic.enabled) {
+                        asyncCore.logic.queue(this);
+                    } else {
+                        accumulator -= executor.runBatch((int) accumulator);
                         executor.yield = false;
-                        break;
                     }
                 }
             }
@@ -723,7 +732,7 @@ public class LogicBlock extends Block {
 
         @Override
         public byte version() {
-            return 3;
+            return 4;
         }
 
         @Override
@@ -766,6 +775,8 @@ public class LogicBlock extends Block {
 
             TypeIO.writeString(write, tag);
             write.s(iconTag);
+
+            write.b(executor instanceof JsExecutor js ? js.mode.ordinal() : 0);
         }
 
         @Override
@@ -833,6 +844,14 @@ public class LogicBlock extends Block {
                 iconTag = (char) read.us();
             }
 
+            if (revision >= 4) {
+                byte mode = read.b();
+                // takes effect when the code is loaded by loadBlock
+                if (executor instanceof JsExecutor js) {
+                    js.mode = mode == JsExecutor.Mode.run.ordinal() ? JsExecutor.Mode.run : JsExecutor.Mode.debug;
+                }
+            }
+
         }
     }
 }
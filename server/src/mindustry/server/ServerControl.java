@@ -239,11 +239,21 @@ public class ServerControl implements ApplicationListener{
                     Fi file = saveDirectory.child(fileName);
                     info("Autosaving...");
 
-                    try{
-                        SaveIO.save(file);
-                        info("Autosave completed.");
-                    }catch(Throwable e){
-                        err("Autosave failed.", e);
+                    if(Config.asyncSaves.bool()){
+                        SaveIO.saveAsync(file, e -> {
+                            if(e == null){
+                                info("Autosave completed.");
+                            }else{
+                                err("Autosave failed.", e);
+                            }
+                        });
+                    }else{
+                        try{
+                            SaveIO.save(file);
+                            info("Autosave completed.");
+                        }catch(Throwable e){
+                            err("Autosave failed.", e);
+                        }
                     }
                 }
             }
@@ -1052,6 +1062,41 @@ public class ServerControl implements ApplicationListener{
             info("@ MB collected. Memory usage now at @ MB.", pre - post, post);
         });
 
+        handler.register("async", "Display the time spent in each asynchronous process.", arg -> {
+            if(!state.isGame()){
+                err("Not hosting. Host a game first.");
+                return;
+            }
+
+            for(var process : asyncCore.processes){
+                info("&lk@&fr: &lc@ms&fr last, &lc@ms&fr average", process.getClass().getSimpleName(), Strings.fixed(asyncCore.lastTime(process), 2), Strings.fixed(asyncCore.averageTime(process), 2));
+            }
+            info("&lkParallelLogic&fr: &lc@ms&fr average", Strings.fixed(asyncCore.logic.averageTime(), 2));
+        });
+
+        handler.register("flowfields", "Display all pathfinding flow fields, how long they took to update and their memory usage.", arg -> {
+            if(!state.isGame()){
+                err("Not hosting. Host a game first.");
+                return;
+            }
+
+            var fields = pathfinder.getFields();
+            info("Flow fields: @, using &lc@ MB&fr in total", fields.size, Strings.fixed(pathfinder.memoryUsage() / 1024f / 1024f, 2));
+            for(var field : fields){
+                float time = field.convergenceMillis();
+                info("&lk@&fr [@] cost @: &lc@&fr, &lc@ MB", field.getClass().getSimpleName(), field.getTeam().name, field.getCostType(),
+                    time < 0 ? "updating" : Strings.fixed(time, 1) + "ms", Strings.fixed(field.memoryUsage() / 1024f / 1024f, 2));
+            }
+        });
+
+        handler.register("netbuffers", "Display how many network buffers were requested and how many of those had to be allocated.", arg -> {
+            var pool = ArcNetProvider.PacketSerializer.pool;
+            long obtained = pool.obtained.get(), allocations = pool.allocations.get();
+            info("Buffers requested: &lc@&fr, allocated: &lc@&fr (&lc@ MB&fr), reused: &lc@%",
+                obtained, allocations, Strings.fixed(pool.allocatedBytes.get() / 1024f / 1024f, 2),
+                obtained == 0 ? 0 : Strings.fixed((obtained - allocations) * 100f / obtained, 1));
+        });
+
         handler.register("yes", "Run the last suggested incorrect command.", arg -> {
             if(suggested == null){
                 err("There is nothing to say yes to.");
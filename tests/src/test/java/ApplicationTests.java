@@ -33,6 +33,7 @@ import org.junit.jupiter.params.provider.*;
 
 import java.io.*;
 import java.nio.*;
+import java.util.zip.*;
 
 import static mindustry.Vars.*;
 import static org.junit.jupiter.api.Assertions.*;
@@ -375,6 +376,53 @@ public class ApplicationTests{
         assertTrue(state.teams.playerCores().size > 0);
     }
 
+    @Test
+    void saveSections() throws IOException{
+        world.loadMap(testMap);
+        Fi file = saveDirectory.child("sections.msav");
+        SaveIO.save(file);
+
+        SaveSections sections = SaveSections.read(file);
+        assertNotNull(sections, "Saves must have an index of their sections");
+
+        byte[] raw;
+        try(InputStream stream = new InflaterInputStream(file.read())){
+            raw = Streams.copyBytes(stream);
+        }
+        assertEquals(raw.length, sections.length());
+        assertArrayEquals(raw, sections.inflate(file), "Sections must inflate to the same bytes as the whole stream");
+
+        SaveSections.Section region = sections.get("region-0");
+        assertNotNull(region);
+        byte[] bytes = new byte[region.length];
+        SaveSections.open(file, region).readFully(bytes);
+        assertArrayEquals(java.util.Arrays.copyOfRange(raw, region.offset, region.offset + region.length), bytes, "A single region must be readable on its own");
+
+        //unchanged regions are written the same, whether they are reused or compressed again
+        SaveIO.save(file);
+        assertEquals(region.compressedLength, SaveSections.read(file).get("region-0").compressedLength);
+
+        resetWorld();
+        SaveIO.load(file);
+        assertTrue(state.teams.playerCores().size > 0);
+
+        //corrupt sections fail the checksum instead of loading garbage
+        byte[] data = file.readBytes();
+        Fi corrupt = saveDirectory.child("corrupt.msav");
+        region = SaveSections.read(file).get("region-0");
+        data[(int)region.position + region.compressedLength / 2] ^= 0x55;
+        corrupt.writeBytes(data);
+        SaveSections corruptSections = SaveSections.read(corrupt);
+        assertThrows(IOException.class, () -> corruptSections.inflate(corrupt));
+
+        //indices that don't fit into the file are ignored
+        data = file.readBytes();
+        int indexStart = data.length - 8 - ByteBuffer.wrap(data, data.length - 8, 4).getInt();
+        ByteBuffer.wrap(data).putInt(indexStart + 4, Integer.MAX_VALUE);
+        corrupt.writeBytes(data);
+        assertNull(SaveSections.read(corrupt));
+    }
+
     void updateBlocks(int times){
         for(Tile tile : world.tiles){
             if(tile.build != null && tile.isCenter()){
@@ -384,6 +432,7 @@ public class ApplicationTests{
 
         for(int i = 0; i < times; i++){
             Time.update();
+            buildingSleeper.update();
             for(Tile tile : world.tiles){
                 if(tile.build != null && tile.isCenter()){
                     tile.build.update();
@@ -559,6 +608,140 @@ public class ApplicationTests{
         assertEquals(Blocks.air, world.tile(0, 0).block());
     }
 
+    @Test
+    void sleepingMatchesAwake(){
+        assertArrayEquals(simulateSleep(false), simulateSleep(true), "Sleeping buildings must not change the outcome of updates.");
+    }
+
+    /**
+     * Feeds a conveyor and conduit line in phases, with pauses long enough for them to fall asleep, and returns the state of every building after each phase.
+     * Buildings are updated in tile order, so that sleeping buildings leaving their groups doesn't change the order, and every sleeping building is woken up by the timer several times per phase.
+     */
+    byte[] simulateSleep(boolean allowSleep){
+        resetWorld();
+        world.loadMap(testMap);
+        state.set(State.playing);
+        state.rules.limitMapArea = false;
+        Building.allowSleep = allowSleep;
+        float maxSleepTime = buildingSleeper.maxSleepTime;
+        buildingSleeper.maxSleepTime = 100f;
+
+        Tile source = world.rawTile(1, 10), liquidSource = world.rawTile(1, 12);
+        source.setBlock(Blocks.itemSource, Team.sharded);
+        liquidSource.setBlock(Blocks.liquidSource, Team.sharded);
+        for(int x = 2; x < 16; x++){
+            world.rawTile(x, 10).setBlock(Blocks.conveyor, Team.sharded, 0);
+            world.rawTile(x, 12).setBlock(Blocks.conduit, Team.sharded, 0);
+        }
+        world.rawTile(17, 10).setBlock(Blocks.vault, Team.sharded);
+        world.rawTile(17, 13).setBlock(Blocks.liquidTank, Team.sharded);
+
+        Item[] items = {Items.copper, null, Items.coal, null};
+        Liquid[] liquids = {Liquids.water, null, Liquids.water, null};
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Writes write = new Writes(new DataOutputStream(output));
+        int maxSleeping = 0;
+
+        for(int i = 0; i < items.length; i++){
+            source.build.configureAny(items[i]);
+            liquidSource.build.configureAny(liquids[i]);
+            updateBlocks(600);
+
+            int sleeping = 0;
+            for(Tile tile : world.tiles){
+                if(tile.build != null && tile.isCenter()){
+                    if(tile.build.sleeping()){
+                        sleeping++;
+                        assertFalse(tile.build.isAdded(), "Sleeping buildings must not be updated by their groups.");
+                    }
+                    write.i(tile.pos());
+                    tile.build.writeAll(write);
+                }
+            }
+            maxSleeping = Math.max(maxSleeping, sleeping);
+        }
+
+        Building.allowSleep = true;
+        buildingSleeper.maxSleepTime = maxSleepTime;
+        if(allowSleep){
+            assertTrue(maxSleeping > 0, "Idle conveyors must fall asleep.");
+        }
+        return output.toByteArray();
+    }
+
+    @Test
+    void parallelUpdatesMatchInline(){
+        assertArrayEquals(simulateParallel(Integer.MAX_VALUE), simulateParallel(0), "Updating chunks on workers must not change the outcome of updates.");
+    }
+
+    /** Runs rows of conveyors across several chunks into vaults, with chunks updated either on the main thread or on workers, and returns the state of every building. */
+    byte[] simulateParallel(int minParallel){
+        int size = ParallelUpdater.chunkSize * 4;
+
+        resetWorld();
+        world.loadGenerator(size, size, tiles -> {
+            for(int x = 0; x < size; x++){
+                for(int y = 0; y < size; y++){
+                    tiles.set(x, y, new Tile(x, y, Blocks.stone, Blocks.air, Blocks.air));
+                }
+            }
+        });
+        state.set(State.playing);
+        state.rules.limitMapArea = false;
+
+        Item[] items = {Items.copper, Items.lead, Items.coal, Items.sand};
+        for(int y = 1; y < size - 1; y += 3){
+            world.rawTile(0, y).setBlock(Blocks.itemSource, Team.sharded);
+            world.rawTile(0, y).build.configureAny(items[y % items.length]);
+            for(int x = 1; x < size - 3; x++){
+                world.rawTile(x, y).setBlock(y % 2 == 0 ? Blocks.conveyor : Blocks.titaniumConveyor, Team.sharded, 0);
+            }
+            world.rawTile(size - 2, y).setBlock(Blocks.vault, Team.sharded);
+        }
+
+        Administration.Config.parallelBuildings.set(true);
+        parallelUpdater.minParallel = minParallel;
+        try{
+            for(Tile tile : world.tiles){
+                if(tile.build != null && tile.isCenter()){
+                    tile.build.updateProximity();
+                }
+            }
+
+            for(int i = 0; i < 600; i++){
+                //cut a line in the middle of a chunk, so that only the chunks around it are collected again
+                if(i == 300){
+                    world.rawTile(ParallelUpdater.chunkSize + ParallelUpdater.chunkSize / 2, 4).setAir();
+                }
+
+                Time.update();
+                parallelUpdater.update();
+                for(Tile tile : world.tiles){
+                    if(tile.build != null && tile.isCenter()){
+                        tile.build.update();
+                    }
+                }
+            }
+
+            assertTrue(world.rawTile(ParallelUpdater.chunkSize / 2, 1).build.updateInParallel, "Conveyors inside a chunk must be updated in parallel.");
+            assertFalse(world.rawTile(ParallelUpdater.chunkSize - 1, 1).build.updateInParallel, "Conveyors at chunk borders must be updated serially.");
+        }finally{
+            Administration.Config.parallelBuildings.set(false);
+            parallelUpdater.minParallel = 512;
+            parallelUpdater.update();
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Writes write = new Writes(new DataOutputStream(output));
+        for(Tile tile : world.tiles){
+            if(tile.build != null && tile.isCenter()){
+                write.i(tile.pos());
+                tile.build.writeAll(write);
+            }
+        }
+        return output.toByteArray();
+    }
+
     @Test
     void conveyorCrash(){
         world.loadMap(testMap);
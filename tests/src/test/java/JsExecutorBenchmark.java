@@ -0,0 +1,66 @@
+import arc.struct.*;
+import arc.util.*;
+import mindustry.logic.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.*;
+import org.junit.jupiter.params.provider.*;
+
+import java.lang.management.*;
+
+/** Measures memory and tick time of many concurrently loaded JS processors. Run with -Pbenchmark. */
+public class JsExecutorBenchmark{
+    static final String code = "var i = 0; while(true){ i++; }";
+    static final int warmupTicks = 30, measuredTicks = 120, stepsPerTick = 8;
+
+    @BeforeAll
+    static void launch(){
+        Assumptions.assumeTrue(Boolean.getBoolean("benchmark"), "benchmarks are disabled");
+        ApplicationTests.launchApplication();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {100, 1000, 5000})
+    void processors(int amount){
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long memoryBefore = runtime.totalMemory() - runtime.freeMemory();
+
+        Seq<JsExecutor> executors = new Seq<>(amount);
+        for(int i = 0; i < amount; i++){
+            JsExecutor exec = new JsExecutor();
+            LAssembler asm = LAssembler.assemble("", false);
+            asm.code = code;
+            exec.load(asm);
+            executors.add(exec);
+        }
+
+        for(int i = 0; i < warmupTicks; i++){
+            tick(executors);
+        }
+
+        System.gc();
+        long memoryAfter = runtime.totalMemory() - runtime.freeMemory();
+
+        long start = Time.nanos();
+        for(int i = 0; i < measuredTicks; i++){
+            tick(executors);
+        }
+        float tickMillis = Time.timeSinceNanos(start) / 1000000f / measuredTicks;
+
+        //only counts platform threads, so virtual script threads show up as their carriers
+        Log.info("[JsExecutor] @ processors: @ MB retained, @ ms/tick, @ platform threads",
+            amount, Strings.fixed((memoryAfter - memoryBefore) / 1024f / 1024f, 2), Strings.fixed(tickMillis, 3), ManagementFactory.getThreadMXBean().getThreadCount());
+
+        for(JsExecutor exec : executors){
+            exec.load(LAssembler.assemble("", false));
+        }
+    }
+
+    static void tick(Seq<JsExecutor> executors){
+        for(JsExecutor exec : executors){
+            for(int i = 0; i < stepsPerTick; i++){
+                exec.runOnce();
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+import arc.func.*;
+import arc.struct.*;
+import arc.util.*;
+import mindustry.core.GameState.*;
+import mindustry.game.*;
+import mindustry.gen.*;
+import mindustry.logic.*;
+import org.junit.jupiter.api.*;
+
+import java.io.*;
+
+import static mindustry.Vars.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.DynamicTest.*;
+
+/** Runs every registered statement through the interpreter, the compiled program and the JIT, and compares the resulting variables. */
+public class LogicCompilerTests{
+    static final int batches = 40, budget = 7;
+
+    @BeforeAll
+    static void launch(){
+        ApplicationTests.launchApplication();
+        Time.setDeltaProvider(() -> 1f);
+        logic.reset();
+        world.loadMap(ApplicationTests.testMap);
+        state.set(State.playing);
+    }
+
+    @TestFactory
+    DynamicTest[] statements(){
+        return LogicIO.allStatements.map(prov -> {
+            LStatement statement = prov.get();
+            return dynamicTest(statement.name(), () -> compare(LAssembler.write(Seq.with(statement))));
+        }).toArray(DynamicTest.class);
+    }
+
+    @Test
+    void counterWrites(){
+        compare(
+            "set i 0\n" +
+            "loop:\n" +
+            "op add i i 1\n" +
+            "set back @counter\n" +
+            "op add @counter @counter 1\n" +
+            "op sub i i 100\n" +
+            "jump loop lessThan i 50\n" +
+            "set @counter 1.5\n"
+        );
+    }
+
+    @Test
+    void methodLength() throws IOException{
+        //generic instructions emit the most bytecode, so programs of them hit the limit first
+        for(int lines : new int[]{10, 50, 100, 200, 400}){
+            StringBuilder code = new StringBuilder();
+            for(int i = 0; i < lines; i++){
+                code.append(i % 3 == 0 ? "print i\n" : i % 3 == 1 ? "op add i i 1\n" : "jump 0 greaterThan i 1000\n");
+            }
+
+            LExecutor exec = new LExecutor();
+            exec.privileged = true;
+            exec.team = Team.sharded;
+            exec.load(LAssembler.assemble(code.toString(), true));
+            LProgram program = LProgram.compile(exec);
+
+            byte[] bytes = LJit.generate("mindustry.logic.jit.Test" + lines, program);
+            if(lines <= 50) assertNotNull(bytes, lines + " instructions were not translated.");
+            if(bytes == null) continue;
+
+            for(int length : codeLengths(bytes)){
+                assertTrue(length < 8000, "Method of " + lines + " instructions is " + length + " bytes long.");
+            }
+        }
+    }
+
+    /** @return the bytecode length of every method in a class file. */
+    static int[] codeLengths(byte[] bytes) throws IOException{
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        in.skipBytes(8);
+
+        int constants = in.readUnsignedShort();
+        String[] utf = new String[constants];
+        for(int i = 1; i < constants; i++){
+            int tag = in.readUnsignedByte();
+            switch(tag){
+                case 1: utf[i] = in.readUTF(); break;
+                case 5: case 6: in.skipBytes(8); i++; break;
+                case 7: case 8: case 16: case 19: case 20: in.skipBytes(2); break;
+                case 15: in.skipBytes(3); break;
+                default: in.skipBytes(4); break;
+            }
+        }
+
+        in.skipBytes(6);
+        in.skipBytes(in.readUnsignedShort() * 2);
+
+        int fields = in.readUnsignedShort();
+        for(int i = 0; i < fields; i++){
+            in.skipBytes(6);
+            int attributes = in.readUnsignedShort();
+            for(int j = 0; j < attributes; j++){
+                in.skipBytes(2);
+                in.skipBytes(in.readInt());
+            }
+        }
+
+        IntSeq lengths = new IntSeq();
+        int methods = in.readUnsignedShort();
+        for(int i = 0; i < methods; i++){
+            in.skipBytes(6);
+            int attributes = in.readUnsignedShort();
+            for(int j = 0; j < attributes; j++){
+                String name = utf[in.readUnsignedShort()];
+                int length = in.readInt();
+                if("Code".equals(name)){
+                    in.skipBytes(4);
+                    int code = in.readInt();
+                    lengths.add(code);
+                    in.skipBytes(length - 8);
+                }else{
+                    in.skipBytes(length);
+                }
+            }
+        }
+        return lengths.toArray();
+    }
+
+    static void compare(String statement){
+        //surround the statement with a loop, so fused and straight-line paths are taken as well
+        String code =
+            "set a 3\n" +
+            "set b 7.5\n" +
+            "set s \"text\"\n" +
+            "loop:\n" +
+            statement +
+            "op add i i 1\n" +
+            "op mul c i b\n" +
+            "jump loop lessThan i 12\n" +
+            "set i 0\n" +
+            "jump 99 always\n";
+
+        Run interpreted = new Run(code, exec -> {});
+        Run compiled = new Run(code, exec -> exec.program = LProgram.compile(exec));
+        Run jit = new Run(code, exec -> {
+            exec.program = LProgram.compile(exec);
+            exec.program.jit = LJit.compile(exec.program);
+            if(LJit.supported) assertNotNull(exec.program.jit, "Program could not be translated.");
+        });
+
+        for(int i = 0; i < batches; i++){
+            interpreted.step();
+            compiled.step();
+            jit.step();
+
+            interpreted.assertSame(compiled, "compiled", i);
+            interpreted.assertSame(jit, "jit", i);
+        }
+    }
+
+    static class Run{
+        final LExecutor exec = new LExecutor();
+        final long seed = 1234;
+        int ran;
+        @Nullable Class<?> error;
+
+        Run(String code, Cons<LExecutor> setup){
+            exec.privileged = true;
+            exec.team = Team.sharded;
+            exec.load(LAssembler.assemble(code, true));
+            setup.get(exec);
+            GlobalVars.rand.setSeed(seed);
+        }
+
+        void step(){
+            if(error != null) return;
+            GlobalVars.rand.setSeed(seed + ran);
+            try{
+                ran += exec.runBatch(budget);
+            }catch(Throwable t){
+                error = t.getClass();
+            }
+            exec.yield = false;
+        }
+
+        void assertSame(Run other, String path, int batch){
+            String at = " (" + path + ", batch " + batch + ")";
+            assertEquals(error, other.error, "Error mismatch" + at);
+            assertEquals(ran, other.ran, "Instruction count mismatch" + at);
+            assertEquals(exec.vars.length, other.exec.vars.length);
+
+            for(int i = 0; i < exec.vars.length; i++){
+                LVar a = exec.vars[i], b = other.exec.vars[i];
+                String name = a.name + at;
+
+                assertEquals(a.isobj, b.isobj, name);
+                if(a.isobj){
+                    //entities are created anew in every run, so only their type can be compared
+                    if(a.objval instanceof Entityc || a.objval instanceof Building){
+                        assertEquals(a.objval.getClass(), b.objval == null ? null : b.objval.getClass(), name);
+                    }else{
+                        assertEquals(a.objval, b.objval, name);
+                    }
+                }else{
+                    assertEquals(a.numval, b.numval, name);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+import arc.*;
+import arc.math.*;
+import arc.struct.*;
+import arc.util.*;
+import mindustry.ai.Pathfinder.*;
+import mindustry.content.*;
+import mindustry.core.GameState.*;
+import mindustry.game.EventType.*;
+import mindustry.game.*;
+import mindustry.net.Administration.*;
+import mindustry.world.*;
+import org.junit.jupiter.api.*;
+
+import static mindustry.Vars.*;
+import static mindustry.ai.Pathfinder.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Replays a recorded stream of tile changes on a large map, with full searches and with incremental repairs. Run with -Pbenchmark. */
+public class PathfinderBenchmark{
+    static final int size = 500, changes = 300;
+    static final int[] costs = {costGround, costLegs, costNaval};
+
+    static boolean recording;
+    static IntSeq recorded = new IntSeq();
+
+    @BeforeAll
+    static void launch(){
+        Assumptions.assumeTrue(Boolean.getBoolean("benchmark"), "benchmarks are disabled");
+        ApplicationTests.launchApplication();
+
+        Events.on(TileChangeEvent.class, e -> {
+            if(recording) recorded.add(e.tile.array(), e.tile.blockID());
+        });
+    }
+
+    @Test
+    void tileChanges(){
+        //record walls being built and torn down around the map
+        load();
+        recording = true;
+        Rand rand = new Rand(0);
+        for(int i = 0; i < changes; i++){
+            Tile tile = world.tile(rand.random(size - 1), rand.random(size - 1));
+            if(tile.block() == Blocks.air){
+                tile.setBlock(Blocks.copperWall, Team.sharded);
+            }else if(tile.block() == Blocks.copperWall){
+                tile.setBlock(Blocks.air);
+            }
+        }
+        recording = false;
+
+        int[][] full = replay(false), repaired = replay(true);
+
+        //tiles that can't be reached keep stale weights after a full search, so only reached tiles are compared
+        for(int i = 0; i < costs.length; i++){
+            for(int pos = 0; pos < full[i].length; pos++){
+                if(repaired[i][pos] != impassable){
+                    assertEquals(full[i][pos], repaired[i][pos], "Weight mismatch at " + pos + " for cost " + costs[i]);
+                }
+            }
+        }
+    }
+
+    static int[][] replay(boolean incremental){
+        load();
+        Config.incrementalPathfinding.set(incremental);
+
+        Flowfield[] fields = new Flowfield[costs.length];
+        for(int i = 0; i < costs.length; i++){
+            fields[i] = pathfinder.getField(Team.crux, costs[i], fieldCore);
+        }
+        pathfinder.updateAll();
+
+        long total = 0;
+        for(int i = 0; i < recorded.size; i += 2){
+            world.tiles.geti(recorded.items[i]).setBlock(content.block(recorded.items[i + 1]), Team.sharded);
+
+            long start = Time.nanos();
+            pathfinder.updateAll();
+            total += Time.timeSinceNanos(start);
+        }
+
+        Log.info("[Pathfinder] @ tile changes on @x@, @: @ ms total, @ ms/change",
+            recorded.size / 2, size, size, incremental ? "incremental" : "full", Strings.fixed(total / 1000000f, 1), Strings.fixed(total / 1000000f / (recorded.size / 2), 3));
+
+        int[][] weights = new int[costs.length][];
+        for(int i = 0; i < costs.length; i++){
+            weights[i] = new int[world.width() * world.height()];
+            for(int pos = 0; pos < weights[i].length; pos++){
+                weights[i][pos] = fields[i].completeWeights.get(pos);
+            }
+        }
+        return weights;
+    }
+
+    static void load(){
+        //the pathfinding thread only works while playing, which would interfere with the measurements
+        state.set(State.menu);
+
+        world.loadGenerator(size, size, tiles -> {
+            for(int x = 0; x < size; x++){
+                for(int y = 0; y < size; y++){
+                    tiles.set(x, y, new Tile(x, y, x > size * 3 / 4 ? Blocks.deepwater : Blocks.stone, Blocks.air, Blocks.air));
+                }
+            }
+
+            //placed before the world is loaded, so that preloaded flow fields already target it
+            tiles.getn(size / 2, size / 2).setBlock(Blocks.coreShard, Team.sharded, 0);
+        });
+    }
+}
@@ -0,0 +1,152 @@
+import arc.math.*;
+import arc.math.geom.*;
+import arc.math.geom.QuadTree.*;
+import arc.struct.*;
+import arc.util.*;
+import mindustry.async.PhysicsProcess.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.*;
+import org.junit.jupiter.params.provider.*;
+
+import java.lang.management.*;
+
+import static mindustry.async.PhysicsProcess.*;
+
+/** Compares the object-per-body physics layout with the array-backed {@link PhysicsWorld}. Run with -Pbenchmark. */
+public class PhysicsBenchmark{
+    static final int warmupSteps = 100, measuredSteps = 300;
+    //bodies per square world unit, about as dense as a large wave
+    static final float density = 1f / 900f;
+
+    @BeforeAll
+    static void launch(){
+        Assumptions.assumeTrue(Boolean.getBoolean("benchmark"), "benchmarks are disabled");
+        ApplicationTests.launchApplication();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {500, 5000, 20000})
+    void bodies(int amount){
+        float size = (float)Math.sqrt(amount / density);
+        Rect bounds = new Rect(0, 0, size, size);
+
+        ObjectWorld objects = new ObjectWorld(bounds);
+        PhysicsWorld quadtree = new PhysicsWorld(bounds), grid = new PhysicsWorld(bounds);
+        grid.broadphase = new GridBroadphase(bounds);
+
+        Rand rand = new Rand(1);
+        for(int i = 0; i < amount; i++){
+            float x = rand.random(size), y = rand.random(size), radius = rand.random(4f, 12f), mass = radius * radius * Mathf.pi;
+            int layer = rand.chance(0.2) ? layerFlying : layerGround;
+
+            ObjectBody body = new ObjectBody();
+            body.x = x;
+            body.y = y;
+            body.radius = radius;
+            body.mass = mass;
+            body.layer = layer;
+            objects.bodies.add(body);
+
+            for(PhysicsWorld world : new PhysicsWorld[]{quadtree, grid}){
+                world.layer[world.add(x, y, radius, mass)] = layer;
+            }
+        }
+
+        measure("objects, quadtree", amount, objects::step);
+        measure("arrays, quadtree", amount, () -> step(quadtree));
+        measure("arrays, grid", amount, () -> step(grid));
+    }
+
+    static void step(PhysicsWorld world){
+        System.arraycopy(world.x, 0, world.startX, 0, world.top);
+        System.arraycopy(world.y, 0, world.startY, 0, world.top);
+        world.update();
+    }
+
+    static void measure(String name, int amount, Runnable step){
+        for(int i = 0; i < warmupSteps; i++){
+            step.run();
+        }
+
+        long allocated = allocatedBytes();
+        long start = Time.nanos();
+        for(int i = 0; i < measuredSteps; i++){
+            step.run();
+        }
+        float stepMillis = Time.timeSinceNanos(start) / 1000000f / measuredSteps;
+        allocated = allocatedBytes() - allocated;
+
+        Log.info("[Physics] @ bodies, @: @ ms/step, @ bytes/step allocated on the calling thread",
+            amount, name, Strings.fixed(stepMillis, 3), allocated / measuredSteps);
+    }
+
+    static long allocatedBytes(){
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        return bean instanceof com.sun.management.ThreadMXBean ? ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+    }
+
+    /** The layout PhysicsWorld used before, with one object per body and the original sequential solver. */
+    static class ObjectWorld{
+        final QuadTree<ObjectBody>[] trees = new QuadTree[layers];
+        final Seq<ObjectBody> bodies = new Seq<>(false, 16, ObjectBody.class);
+        final Seq<ObjectBody> seq = new Seq<>(ObjectBody.class);
+        final Rect rect = new Rect();
+        final Vec2 vec = new Vec2();
+
+        ObjectWorld(Rect bounds){
+            for(int i = 0; i < layers; i++){
+                trees[i] = new QuadTree<>(new Rect(bounds));
+            }
+        }
+
+        void step(){
+            for(int i = 0; i < layers; i++){
+                trees[i].clear();
+            }
+
+            for(ObjectBody body : bodies){
+                body.collided = false;
+                trees[body.layer].insert(body);
+            }
+
+            for(ObjectBody body : bodies){
+                body.hitbox(rect);
+
+                seq.size = 0;
+                trees[body.layer].intersect(rect, seq);
+
+                for(int j = 0; j < seq.size; j++){
+                    ObjectBody other = seq.items[j];
+
+                    if(other == body || other.collided) continue;
+
+                    float rs = body.radius + other.radius;
+                    float dst = Mathf.dst(body.x, body.y, other.x, other.y);
+
+                    if(dst < rs){
+                        vec.set(body.x - other.x, body.y - other.y).setLength(rs - dst);
+                        float ms = body.mass + other.mass;
+                        float m1 = other.mass / ms, m2 = body.mass / ms;
+
+                        body.x += vec.x * m1 / 1.25f;
+                        body.y += vec.y * m1 / 1.25f;
+                        other.x -= vec.x * m2 / 1.25f;
+                        other.y -= vec.y * m2 / 1.25f;
+                    }
+                }
+                body.collided = true;
+            }
+        }
+    }
+
+    static class ObjectBody implements QuadTreeObject{
+        float x, y, radius, mass;
+        int layer;
+        boolean collided;
+
+        @Override
+        public void hitbox(Rect out){
+            out.setCentered(x, y, radius * 2, radius * 2);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+import arc.files.*;
+import arc.math.*;
+import arc.util.*;
+import mindustry.content.*;
+import mindustry.core.GameState.*;
+import mindustry.game.*;
+import mindustry.io.*;
+import mindustry.io.versions.*;
+import mindustry.world.*;
+import org.junit.jupiter.api.*;
+
+import java.io.*;
+
+import static mindustry.Vars.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Saves a large world where 1% of regions changed between saves, with and without cached regions, including compression. Run with -Pbenchmark.
+ * Half of the world is idle buildings, whose regions are encoded again but not compressed again; the other half is terrain, whose regions are skipped entirely.
+ */
+public class SaveBenchmark{
+    static final int size = 640, saves = 20;
+
+    @BeforeAll
+    static void launch(){
+        Assumptions.assumeTrue(Boolean.getBoolean("benchmark"), "benchmarks are disabled");
+        ApplicationTests.launchApplication();
+    }
+
+    @Test
+    void dirtyRegions() throws IOException{
+        load();
+
+        Save9 writer = (Save9)SaveIO.getSaveWriter(9);
+        int regionsX = (size + Save9.regionSize - 1) / Save9.regionSize, regions = regionsX * regionsX, changed = Math.max(regions / 100, 1);
+        Fi cachedFile = saveDirectory.child("benchmark-cached.msav"), fullFile = saveDirectory.child("benchmark-full.msav");
+
+        writer.clearRegionCache();
+        SaveIO.write(cachedFile);
+
+        Rand rand = new Rand(0);
+        long cachedTime = 0, fullTime = 0;
+
+        for(int i = 0; i < saves; i++){
+            for(int j = 0; j < changed; j++){
+                int region = rand.random(regions - 1);
+                int x = (region % regionsX) * Save9.regionSize + rand.random(Save9.regionSize - 1), y = (region / regionsX) * Save9.regionSize + rand.random(Save9.regionSize - 1);
+                Tile tile = world.rawTile(x, y);
+                tile.setBlock(tile.block() == Blocks.copperWall ? Blocks.titaniumWall : Blocks.copperWall, Team.sharded);
+            }
+
+            long start = Time.nanos();
+            SaveIO.write(cachedFile);
+            cachedTime += Time.timeSinceNanos(start);
+
+            writer.clearRegionCache();
+
+            start = Time.nanos();
+            SaveIO.write(fullFile);
+            fullTime += Time.timeSinceNanos(start);
+
+            SaveSections cached = SaveSections.read(cachedFile), full = SaveSections.read(fullFile);
+            for(int r = 0; r < regions; r++){
+                assertArrayEquals(region(fullFile, full, r), region(cachedFile, cached, r), "Cached region " + r + " differs from a full save after save " + i);
+            }
+        }
+
+        Log.info("[Save] @ saves of @x@ with @/@ regions changed: @ ms/save cached, @ ms/save full",
+            saves, size, size, changed, regions, Strings.fixed(cachedTime / 1000000f / saves, 2), Strings.fixed(fullTime / 1000000f / saves, 2));
+
+        cachedFile.delete();
+        fullFile.delete();
+    }
+
+    static byte[] region(Fi file, SaveSections sections, int r) throws IOException{
+        SaveSections.Section section = sections.get("region-" + r);
+        byte[] bytes = new byte[section.length];
+        SaveSections.open(file, section).readFully(bytes);
+        return bytes;
+    }
+
+    static void load(){
+        state.set(State.menu);
+
+        world.loadGenerator(size, size, tiles -> {
+            for(int x = 0; x < size; x++){
+                for(int y = 0; y < size; y++){
+                    tiles.set(x, y, new Tile(x, y, Blocks.stone, (x / 7 + y / 5) % 6 == 0 ? Blocks.oreCopper : Blocks.air, Blocks.air));
+                }
+            }
+
+            //walls and containers in the lower half, like a late-game base next to untouched terrain
+            for(int y = 0; y + 2 < size / 2; y += 3){
+                for(int x = 0; x < size; x++){
+                    tiles.getn(x, y).setBlock(Blocks.copperWall, Team.sharded, 0);
+                }
+                for(int x = 0; x + 1 < size; x += 3){
+                    tiles.getn(x, y + 1).setBlock(Blocks.container, Team.sharded, 0);
+                }
+            }
+        });
+    }
+}